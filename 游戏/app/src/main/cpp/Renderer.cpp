@@ -6,7 +6,10 @@
 #include <GLES2/gl2.h>
 #include <cmath>
 #include <algorithm>
+#include <atomic>
 #include <ctime>
+#include <mutex>
+#include <vector>
 
 jlong JNICALL createNativeObject(JNIEnv *env, jclass clazz);
 
@@ -18,7 +21,21 @@ void JNICALL resizeGL(JNIEnv *env, jclass clazz, jlong native_pointer, jint widt
 
 void JNICALL paintGL(JNIEnv *env, jclass clazz, jlong native_pointer);
 
-void JNICALL addParticle(JNIEnv *env, jclass clazz, jlong native_pointer, jfloat x, jfloat y);
+void JNICALL addParticles(JNIEnv *env, jclass clazz, jlong native_pointer, jfloatArray points, jint count);
+
+void JNICALL setBoardGeometry(JNIEnv *env, jclass clazz, jlong native_pointer, jfloatArray edge_lines,
+                              jfloatArray arrow_lines, jfloatArray points, jfloat line_width,
+                              jfloat radius, jfloat offset_x, jfloat offset_y,
+                              jfloatArray label_rects);
+
+void JNICALL setBoardState(JNIEnv *env, jclass clazz, jlong native_pointer, jintArray edge_colors,
+                           jintArray point_colors, jint hint_point, jint hint_color,
+                           jint head_point, jint head_color, jboolean pressed, jfloat press_x,
+                           jfloat press_y);
+
+void JNICALL setBoardTexture(JNIEnv *env, jclass clazz, jlong native_pointer, jint texture);
+
+void JNICALL clearBoard(JNIEnv *env, jclass clazz, jlong native_pointer);
 
 JNIEXPORT jint JNICALL JNI_OnLoad(JavaVM *vm, void *reserved) {
     JNIEnv *env = nullptr;
@@ -30,10 +47,14 @@ JNIEXPORT jint JNICALL JNI_OnLoad(JavaVM *vm, void *reserved) {
                 {"nativeSurfaceCreated", "(J)V",   (void *) initializeGL},
                 {"nativeSurfaceChange",  "(JII)V", (void *) resizeGL},
                 {"nativeDrawFrame",      "(J)V",   (void *) paintGL},
-                {"addParticle",          "(JFF)V", (void *) addParticle}
+                {"addParticles",         "(J[FI)V", (void *) addParticles},
+                {"nativeSetBoardGeometry", "(J[F[F[FFFFF[F)V", (void *) setBoardGeometry},
+                {"nativeSetBoardState",    "(J[I[IIIIIZFF)V",  (void *) setBoardState},
+                {"nativeSetBoardTexture",  "(JI)V",            (void *) setBoardTexture},
+                {"nativeClearBoard",       "(J)V",             (void *) clearBoard}
         };
         // 使用这个函数注册
-        env->RegisterNatives(clazz, nativeMethod, 6);
+        env->RegisterNatives(clazz, nativeMethod, sizeof(nativeMethod) / sizeof(nativeMethod[0]));
     }
     srand(time(nullptr));
     return JNI_VERSION_1_4;
@@ -41,6 +62,8 @@ JNIEXPORT jint JNICALL JNI_OnLoad(JavaVM *vm, void *reserved) {
 
 static constexpr int particle_max_count = 8192;
 static constexpr float speed = 0.01;
+// 必须为 2 的幂
+static constexpr int touch_queue_size = 1024;
 
 struct Particle {
     GLfloat position[2];
@@ -49,10 +72,75 @@ struct Particle {
     GLfloat start_time;
 };
 
+// 单生产者 (UI 线程) 单消费者 (GL 线程) 的触摸点队列，满时丢弃新的点
+struct TouchQueue {
+    GLfloat points[touch_queue_size * 2];
+    std::atomic<uint32_t> head{0};
+    std::atomic<uint32_t> tail{0};
+};
+
+// 坐标为 GameView 中的像素坐标，偏移与换算在着色器中完成
+struct BoardVertex {
+    GLfloat position[2];
+    GLfloat local[2];
+    GLfloat mode;
+};
+
+// 颜色与顶点分开存放，状态变化时只上传颜色
+struct BoardColor {
+    GLubyte rgba[4];
+};
+
+// 棋盘：几何数据在图或大小变化时设置，状态每帧设置，由 UI 线程写入、GL 线程读取
+struct Board {
+    std::mutex mutex;
+    bool visible = false;
+
+    // 每个点 3 个数：坐标与是否为方形，用于拖动线、提示圈与当前点圈
+    std::vector<GLfloat> points;
+    int edge_count = 0;
+    int point_count = 0;
+    float line_width = 0;
+    float radius = 0;
+    float offset_x = 0;
+    float offset_y = 0;
+    GLuint label_texture = 0;
+
+    // 设置几何数据时展开的静态三角形，依次为边与箭头、点、文字，上传到 VBO 后每帧复用
+    std::vector<BoardVertex> vertices;
+    std::vector<BoardColor> colors;
+    // 每个顶点的颜色来源：小于 edge_count 为边的下标，否则为 edge_count + 点的下标；-1 为固定的黑色
+    std::vector<int> color_sources;
+    int point_first = 0;
+    int label_first = 0;
+    // vertices 尚未上传 (几何数据变化或表面重建)；colors 需要按状态重新计算并上传
+    bool vertices_dirty = false;
+    bool colors_dirty = false;
+
+    std::vector<jint> edge_colors;
+    std::vector<jint> point_colors;
+    int hint_point = -1;
+    int hint_color = 0;
+    int head_point = -1;
+    int head_color = 0;
+    bool pressed = false;
+    float press_x = 0;
+    float press_y = 0;
+
+    // 拖动线、提示圈与当前点圈，每帧生成，最多 18 个顶点，直接从内存绘制
+    std::vector<BoardVertex> overlay_vertices;
+    std::vector<BoardColor> overlay_colors;
+};
+
 struct CppObject {
     Particle particles[particle_max_count];
     int particle_index;
     int particle_length;
+    // 上次上传之后写入的粒子：从 dirty_begin 开始的 dirty_count 个，可能绕回数组开头
+    int dirty_begin;
+    int dirty_count;
+    GLuint particleBuffer;
+    TouchQueue touches;
 
     GLuint program;
     GLuint uTime;
@@ -62,8 +150,41 @@ struct CppObject {
     GLuint aStartTime;
 
     float time;
+    int width;
+    int height;
+
+    Board board;
+    GLuint boardVertexBuffer;
+    GLuint boardColorBuffer;
+    GLuint boardProgram;
+    GLuint uLabels;
+    GLuint uBoardSize;
+    GLuint uBoardOffset;
+    GLuint aBoardPosition;
+    GLuint aBoardLocal;
+    GLuint aBoardMode;
+    GLuint aBoardColor;
 };
 
+inline GLuint compileProgram(const char *vertex_shader_code, const char *fragment_shader_code) {
+    GLuint vertex_shader = glCreateShader(GL_VERTEX_SHADER);
+    glShaderSource(vertex_shader, 1, &vertex_shader_code, nullptr);
+    glCompileShader(vertex_shader);
+
+    GLuint fragment_shader = glCreateShader(GL_FRAGMENT_SHADER);
+    glShaderSource(fragment_shader, 1, &fragment_shader_code, nullptr);
+    glCompileShader(fragment_shader);
+
+    GLuint program = glCreateProgram();
+    glAttachShader(program, vertex_shader);
+    glAttachShader(program, fragment_shader);
+    glLinkProgram(program);
+
+    glDeleteShader(vertex_shader);
+    glDeleteShader(fragment_shader);
+    return program;
+}
+
 inline void createProgram(CppObject *object) {
     static constexpr const char *vertex_shader_code =
             "uniform float u_Time;\n"
@@ -100,22 +221,7 @@ inline void createProgram(CppObject *object) {
             "   }\n"
             "}\n";
 
-    GLuint vertex_shader = glCreateShader(GL_VERTEX_SHADER);
-    glShaderSource(vertex_shader, 1, &vertex_shader_code, nullptr);
-    glCompileShader(vertex_shader);
-
-    GLuint fragment_shader = glCreateShader(GL_FRAGMENT_SHADER);
-    glShaderSource(fragment_shader, 1, &fragment_shader_code, nullptr);
-    glCompileShader(fragment_shader);
-
-    GLuint program = glCreateProgram();
-    glAttachShader(program, vertex_shader);
-    glAttachShader(program, fragment_shader);
-    glLinkProgram(program);
-
-    glDeleteShader(vertex_shader);
-    glDeleteShader(fragment_shader);
-
+    GLuint program = compileProgram(vertex_shader_code, fragment_shader_code);
     object->program = program;
     object->uTime = glGetUniformLocation(program, "u_Time");
     object->aPosition = glGetAttribLocation(program, "a_Position");
@@ -124,6 +230,56 @@ inline void createProgram(CppObject *object) {
     object->aStartTime = glGetAttribLocation(program, "a_StartTime");
 }
 
+// 所有棋盘元素都是三角形：mode 为 0 时直接填充，为 1 时裁成圆形，为 2 时从文字纹理取透明度
+inline void createBoardProgram(CppObject *object) {
+    static constexpr const char *vertex_shader_code =
+            "uniform vec2 u_Size;\n"
+            "uniform vec2 u_Offset;\n"
+            "attribute vec2 a_Position;\n"
+            "attribute vec2 a_Local;\n"
+            "attribute float a_Mode;\n"
+            "attribute vec4 a_Color;\n"
+            "\n"
+            "varying vec2 v_Local;\n"
+            "varying float v_Mode;\n"
+            "varying vec4 v_Color;\n"
+            "\n"
+            "void main() {\n"
+            "   v_Local = a_Local;\n"
+            "   v_Mode = a_Mode;\n"
+            "   v_Color = a_Color;\n"
+            "   vec2 position = (a_Position + u_Offset) * 2.0 / u_Size;\n"
+            "   gl_Position = vec4(position.x - 1.0, 1.0 - position.y, 0, 1);\n"
+            "}\n";
+
+    static constexpr const char *fragment_shader_code =
+            "precision mediump float;\n"
+            "uniform sampler2D u_Labels;\n"
+            "varying vec2 v_Local;\n"
+            "varying float v_Mode;\n"
+            "varying vec4 v_Color;\n"
+            "\n"
+            "void main() {\n"
+            "   if (v_Mode > 1.5) {\n"
+            "       gl_FragColor = vec4(v_Color.rgb, v_Color.a * texture2D(u_Labels, v_Local).a);\n"
+            "   } else if (v_Mode > 0.5 && dot(v_Local, v_Local) > 1.0) {\n"
+            "       discard;\n"
+            "   } else {\n"
+            "       gl_FragColor = v_Color;\n"
+            "   }\n"
+            "}\n";
+
+    GLuint program = compileProgram(vertex_shader_code, fragment_shader_code);
+    object->boardProgram = program;
+    object->uLabels = glGetUniformLocation(program, "u_Labels");
+    object->uBoardSize = glGetUniformLocation(program, "u_Size");
+    object->uBoardOffset = glGetUniformLocation(program, "u_Offset");
+    object->aBoardPosition = glGetAttribLocation(program, "a_Position");
+    object->aBoardLocal = glGetAttribLocation(program, "a_Local");
+    object->aBoardMode = glGetAttribLocation(program, "a_Mode");
+    object->aBoardColor = glGetAttribLocation(program, "a_Color");
+}
+
 inline void
 newParticle(CppObject *object, float x, float y, float angle, float red, float green, float blue) {
 
@@ -139,17 +295,247 @@ newParticle(CppObject *object, float x, float y, float angle, float red, float g
 
     particle.start_time = object->time;
 
+    if (object->dirty_count == 0) {
+        object->dirty_begin = object->particle_index;
+    }
+    object->dirty_count = std::min(object->dirty_count + 1, particle_max_count);
     object->particle_index = (object->particle_index + 1) % particle_max_count;
     object->particle_length = std::min(object->particle_length + 1, particle_max_count);
 }
 
+inline BoardColor toBoardColor(jint color) {
+    return {{(GLubyte) (color >> 16), (GLubyte) (color >> 8), (GLubyte) color, (GLubyte) (color >> 24)}};
+}
+
+// 添加一个矩形 (两个三角形)，四个角的 local 坐标分别为 (u0, v0) ~ (u1, v1)
+inline void pushQuad(std::vector<BoardVertex> &vertices, const float corners[8], float u0, float v0,
+                     float u1, float v1, float mode) {
+    const float local[8] = {u0, v0, u1, v0, u1, v1, u0, v1};
+    static constexpr int order[6] = {0, 1, 2, 0, 2, 3};
+    for (int i : order) {
+        BoardVertex vertex;
+        vertex.position[0] = corners[i * 2];
+        vertex.position[1] = corners[i * 2 + 1];
+        vertex.local[0] = local[i * 2];
+        vertex.local[1] = local[i * 2 + 1];
+        vertex.mode = mode;
+        vertices.push_back(vertex);
+    }
+}
+
+inline void pushLine(std::vector<BoardVertex> &vertices, float ax, float ay, float bx, float by, float width) {
+    float dx = bx - ax, dy = by - ay;
+    float length = std::sqrt(dx * dx + dy * dy);
+    if (length == 0) return;
+    float nx = -dy / length * width / 2, ny = dx / length * width / 2;
+    const float corners[8] = {ax + nx, ay + ny, bx + nx, by + ny, bx - nx, by - ny, ax - nx, ay - ny};
+    pushQuad(vertices, corners, 0, 0, 0, 0, 0);
+}
+
+inline void pushSprite(std::vector<BoardVertex> &vertices, float x, float y, float radius, bool circle) {
+    const float corners[8] = {x - radius, y - radius, x + radius, y - radius,
+                              x + radius, y + radius, x - radius, y + radius};
+    pushQuad(vertices, corners, -1, -1, 1, 1, circle ? 1 : 0);
+}
+
+// 几何数据变化时生成棋盘的静态三角形：边、箭头、点、文字，并记下每个顶点的颜色来源
+inline void tessellateBoard(Board &board, const std::vector<GLfloat> &edge_lines,
+                            const std::vector<GLfloat> &arrow_lines, const std::vector<GLfloat> &label_rects) {
+    auto &vertices = board.vertices;
+    auto &sources = board.color_sources;
+    vertices.clear();
+    sources.clear();
+    for (int i = 0; i < board.edge_count; i++) {
+        const float *line = &edge_lines[i * 4];
+        pushLine(vertices, line[0], line[1], line[2], line[3], board.line_width);
+        sources.resize(vertices.size(), i);
+    }
+    for (int i = 0; i < board.edge_count; i++) {
+        const float *arrow = &arrow_lines[i * 8];
+        pushLine(vertices, arrow[0], arrow[1], arrow[2], arrow[3], board.line_width / 2);
+        pushLine(vertices, arrow[4], arrow[5], arrow[6], arrow[7], board.line_width / 2);
+        sources.resize(vertices.size(), i);
+    }
+    board.point_first = vertices.size();
+    for (int i = 0; i < board.point_count; i++) {
+        const float *point = &board.points[i * 3];
+        pushSprite(vertices, point[0], point[1], board.radius, point[2] == 0);
+        sources.resize(vertices.size(), board.edge_count + i);
+    }
+    board.label_first = vertices.size();
+    for (int i = 0; i < board.point_count && i * 4 < (int) label_rects.size(); i++) {
+        const float *rect = &label_rects[i * 4];
+        if (rect[0] < 0) continue;
+        const float *point = &board.points[i * 3];
+        float half_width = board.radius * 2, half_height = board.radius;
+        const float corners[8] = {point[0] - half_width, point[1] - half_height,
+                                  point[0] + half_width, point[1] - half_height,
+                                  point[0] + half_width, point[1] + half_height,
+                                  point[0] - half_width, point[1] + half_height};
+        pushQuad(vertices, corners, rect[0], rect[1], rect[2], rect[3], 2);
+    }
+    sources.resize(vertices.size(), -1);
+    board.colors.assign(vertices.size(), toBoardColor(0xff000000));
+}
+
+// 按当前状态生成叠加层：拖动线、提示圈、当前点圈
+inline void buildOverlay(Board &board) {
+    auto &vertices = board.overlay_vertices;
+    auto &colors = board.overlay_colors;
+    vertices.clear();
+    colors.clear();
+    if (board.pressed && board.head_point != -1) {
+        const float *head = &board.points[board.head_point * 3];
+        pushLine(vertices, head[0], head[1], board.press_x, board.press_y, board.line_width);
+        colors.resize(vertices.size(), toBoardColor(0xff00ff99));
+    }
+    if (board.hint_point != -1) {
+        const float *hint = &board.points[board.hint_point * 3];
+        pushSprite(vertices, hint[0], hint[1], board.radius * 1.3f, hint[2] == 0);
+        colors.resize(vertices.size(), toBoardColor(board.hint_color));
+    }
+    if (board.head_point != -1) {
+        const float *head = &board.points[board.head_point * 3];
+        pushSprite(vertices, head[0], head[1], board.radius * 1.1f, head[2] == 0);
+        colors.resize(vertices.size(), toBoardColor(board.head_color));
+    }
+}
+
+// 设置顶点属性：绑定了缓冲区时 vertices 与 colors 为缓冲区内的起点 (nullptr)，否则为内存地址
+inline void bindBoardAttributes(CppObject *object, GLuint vertex_buffer, const BoardVertex *vertices,
+                                GLuint color_buffer, const BoardColor *colors) {
+    auto base = reinterpret_cast<uintptr_t>(vertices);
+    glBindBuffer(GL_ARRAY_BUFFER, vertex_buffer);
+    glVertexAttribPointer(object->aBoardPosition, 2, GL_FLOAT, GL_FALSE, sizeof(BoardVertex),
+                          reinterpret_cast<void *>(base + offsetof(BoardVertex, position)));
+    glVertexAttribPointer(object->aBoardLocal, 2, GL_FLOAT, GL_FALSE, sizeof(BoardVertex),
+                          reinterpret_cast<void *>(base + offsetof(BoardVertex, local)));
+    glVertexAttribPointer(object->aBoardMode, 1, GL_FLOAT, GL_FALSE, sizeof(BoardVertex),
+                          reinterpret_cast<void *>(base + offsetof(BoardVertex, mode)));
+    glBindBuffer(GL_ARRAY_BUFFER, color_buffer);
+    glVertexAttribPointer(object->aBoardColor, 4, GL_UNSIGNED_BYTE, GL_TRUE, sizeof(BoardColor), colors);
+}
+
+// 静态部分在几何数据变化后上传一次，之后只在状态变化时上传边与点的颜色
+inline void uploadBoard(CppObject *object) {
+    auto &board = object->board;
+    if (board.colors_dirty) {
+        for (size_t i = 0; i < board.color_sources.size(); i++) {
+            int source = board.color_sources[i];
+            if (source < 0) continue;
+            board.colors[i] = toBoardColor(source < board.edge_count ? board.edge_colors[source]
+                                                                     : board.point_colors[source - board.edge_count]);
+        }
+    }
+    if (board.vertices_dirty) {
+        glBindBuffer(GL_ARRAY_BUFFER, object->boardVertexBuffer);
+        glBufferData(GL_ARRAY_BUFFER, board.vertices.size() * sizeof(BoardVertex), board.vertices.data(),
+                     GL_STATIC_DRAW);
+        glBindBuffer(GL_ARRAY_BUFFER, object->boardColorBuffer);
+        glBufferData(GL_ARRAY_BUFFER, board.colors.size() * sizeof(BoardColor), board.colors.data(),
+                     GL_DYNAMIC_DRAW);
+    } else if (board.colors_dirty) {
+        // 文字的颜色固定，只上传边与点
+        glBindBuffer(GL_ARRAY_BUFFER, object->boardColorBuffer);
+        glBufferSubData(GL_ARRAY_BUFFER, 0, board.label_first * sizeof(BoardColor), board.colors.data());
+    }
+    board.vertices_dirty = false;
+    board.colors_dirty = false;
+}
+
+// 按绘制顺序：边、箭头、拖动线、提示圈、当前点圈、点、文字
+inline void paintBoard(CppObject *object) {
+    auto &board = object->board;
+    std::lock_guard<std::mutex> lock(board.mutex);
+    if (!board.visible || board.point_colors.empty()) return;
+    uploadBoard(object);
+    buildOverlay(board);
+
+    glEnable(GL_BLEND);
+    glBlendFuncSeparate(GL_SRC_ALPHA, GL_ONE_MINUS_SRC_ALPHA, GL_ONE, GL_ONE_MINUS_SRC_ALPHA);
+    glUseProgram(object->boardProgram);
+    glActiveTexture(GL_TEXTURE0);
+    glBindTexture(GL_TEXTURE_2D, board.label_texture);
+    glUniform1i(object->uLabels, 0);
+    glUniform2f(object->uBoardSize, object->width, object->height);
+    glUniform2f(object->uBoardOffset, board.offset_x, board.offset_y);
+    glEnableVertexAttribArray(object->aBoardPosition);
+    glEnableVertexAttribArray(object->aBoardLocal);
+    glEnableVertexAttribArray(object->aBoardMode);
+    glEnableVertexAttribArray(object->aBoardColor);
+
+    bindBoardAttributes(object, object->boardVertexBuffer, nullptr, object->boardColorBuffer, nullptr);
+    glDrawArrays(GL_TRIANGLES, 0, board.point_first);
+    if (!board.overlay_vertices.empty()) {
+        bindBoardAttributes(object, 0, board.overlay_vertices.data(), 0, board.overlay_colors.data());
+        glDrawArrays(GL_TRIANGLES, 0, board.overlay_vertices.size());
+        bindBoardAttributes(object, object->boardVertexBuffer, nullptr, object->boardColorBuffer, nullptr);
+    }
+    int end = board.label_texture != 0 ? board.vertices.size() : board.label_first;
+    glDrawArrays(GL_TRIANGLES, board.point_first, end - board.point_first);
+
+    glDisableVertexAttribArray(object->aBoardPosition);
+    glDisableVertexAttribArray(object->aBoardLocal);
+    glDisableVertexAttribArray(object->aBoardMode);
+    glDisableVertexAttribArray(object->aBoardColor);
+    glBindBuffer(GL_ARRAY_BUFFER, 0);
+    glDisable(GL_BLEND);
+}
+
+inline void newParticle(CppObject *object, float x, float y) {
+    switch (rand() % 3) {
+        case 0:
+            newParticle(object, x, y, rand(), 1, 0, 0);
+            break;
+        case 1:
+            newParticle(object, x, y, rand(), 0, 1, 0);
+            break;
+        case 2:
+            newParticle(object, x, y, rand(), 0, 0, 1);
+            break;
+    }
+}
+
+// 在 GL 线程中把队列里的触摸点变成粒子
+inline void drainTouches(CppObject *object) {
+    auto &touches = object->touches;
+    uint32_t tail = touches.tail.load(std::memory_order_acquire);
+    uint32_t head = touches.head.load(std::memory_order_relaxed);
+    for (; head != tail; head++) {
+        const GLfloat *point = &touches.points[(head & (touch_queue_size - 1)) * 2];
+        newParticle(object, point[0], point[1]);
+    }
+    touches.head.store(head, std::memory_order_release);
+}
+
+// 只上传环形缓冲区中变化的部分，绕回时分两段
+inline void uploadParticles(CppObject *object) {
+    int count = object->dirty_count;
+    if (count == 0) return;
+    int begin = count == particle_max_count ? 0 : object->dirty_begin;
+    int first = std::min(count, particle_max_count - begin);
+    glBufferSubData(GL_ARRAY_BUFFER, begin * sizeof(Particle), first * sizeof(Particle),
+                    object->particles + begin);
+    if (first < count) {
+        glBufferSubData(GL_ARRAY_BUFFER, 0, (count - first) * sizeof(Particle), object->particles);
+    }
+    object->dirty_count = 0;
+}
+
 #define CPP_OBJECT auto object = reinterpret_cast<CppObject*>(native_pointer)
 
 jlong createNativeObject(JNIEnv *env, jclass clazz) {
     auto object = new CppObject;
     object->particle_index = 0;
     object->particle_length = 0;
+    object->dirty_begin = 0;
+    object->dirty_count = 0;
+    object->particleBuffer = 0;
+    object->boardVertexBuffer = 0;
+    object->boardColorBuffer = 0;
     object->time = 0;
+    object->width = 1;
+    object->height = 1;
     return reinterpret_cast<jlong>(object);
 }
 
@@ -162,48 +548,147 @@ void initializeGL(JNIEnv *env, jclass clazz, jlong native_pointer) {
     CPP_OBJECT;
     glClearColor(0, 0, 0.3, 0);
     createProgram(object);
+    createBoardProgram(object);
+
+    // 表面重建后旧的缓冲区已失效，重新创建并上传全部粒子
+    glGenBuffers(1, &object->particleBuffer);
+    glBindBuffer(GL_ARRAY_BUFFER, object->particleBuffer);
+    glBufferData(GL_ARRAY_BUFFER, sizeof(object->particles), object->particles, GL_DYNAMIC_DRAW);
+    glBindBuffer(GL_ARRAY_BUFFER, 0);
+    object->dirty_count = 0;
+
+    // 棋盘的缓冲区同样需要重建，下一帧重新上传
+    glGenBuffers(1, &object->boardVertexBuffer);
+    glGenBuffers(1, &object->boardColorBuffer);
+    std::lock_guard<std::mutex> lock(object->board.mutex);
+    object->board.vertices_dirty = true;
+    object->board.colors_dirty = true;
 }
 
 void resizeGL(JNIEnv *env, jclass clazz, jlong native_pointer, jint width, jint height) {
     CPP_OBJECT;
     glViewport(0, 0, width, height);
+    object->width = width;
+    object->height = height;
 }
 
 void paintGL(JNIEnv *env, jclass clazz, jlong native_pointer) {
     CPP_OBJECT;
     glClear(GL_COLOR_BUFFER_BIT);
 
+    paintBoard(object);
+
     object->time++;
     glUseProgram(object->program);
     glUniform1f(object->uTime, object->time);
+    drainTouches(object);
+    glBindBuffer(GL_ARRAY_BUFFER, object->particleBuffer);
+    uploadParticles(object);
     glVertexAttribPointer(object->aPosition, 2, GL_FLOAT, GL_FALSE, sizeof(Particle),
-                          ((uint8_t *) object->particles) + offsetof(Particle, position));
+                          reinterpret_cast<void *>(offsetof(Particle, position)));
     glEnableVertexAttribArray(object->aPosition);
     glVertexAttribPointer(object->aSpeed, 2, GL_FLOAT, GL_FALSE, sizeof(Particle),
-                          ((uint8_t *) object->particles) + offsetof(Particle, speed));
+                          reinterpret_cast<void *>(offsetof(Particle, speed)));
     glEnableVertexAttribArray(object->aSpeed);
     glVertexAttribPointer(object->aColor, 3, GL_FLOAT, GL_FALSE, sizeof(Particle),
-                          ((uint8_t *) object->particles) + offsetof(Particle, color));
+                          reinterpret_cast<void *>(offsetof(Particle, color)));
     glEnableVertexAttribArray(object->aColor);
     glVertexAttribPointer(object->aStartTime, 1, GL_FLOAT, GL_FALSE, sizeof(Particle),
-                          ((uint8_t *) object->particles) + offsetof(Particle, start_time));
+                          reinterpret_cast<void *>(offsetof(Particle, start_time)));
     glEnableVertexAttribArray(object->aStartTime);
 
     glDrawArrays(GL_POINTS, 0, object->particle_length);
+
+    glDisableVertexAttribArray(object->aPosition);
+    glDisableVertexAttribArray(object->aSpeed);
+    glDisableVertexAttribArray(object->aColor);
+    glDisableVertexAttribArray(object->aStartTime);
+    glBindBuffer(GL_ARRAY_BUFFER, 0);
 }
 
-void JNICALL addParticle(JNIEnv *env, jclass clazz, jlong native_pointer, jfloat x, jfloat y) {
+void JNICALL addParticles(JNIEnv *env, jclass clazz, jlong native_pointer, jfloatArray points, jint count) {
+    CPP_OBJECT;
+    auto &touches = object->touches;
+    uint32_t tail = touches.tail.load(std::memory_order_relaxed);
+    uint32_t head = touches.head.load(std::memory_order_acquire);
+    int free = touch_queue_size - (int) (tail - head);
+    count = std::min(count, free);
+    // 直接复制到队列中，绕回时分两段
+    int begin = tail & (touch_queue_size - 1);
+    int first = std::min(count, touch_queue_size - begin);
+    env->GetFloatArrayRegion(points, 0, first * 2, &touches.points[begin * 2]);
+    if (first < count) {
+        env->GetFloatArrayRegion(points, first * 2, (count - first) * 2, touches.points);
+    }
+    touches.tail.store(tail + count, std::memory_order_release);
+}
+void JNICALL setBoardGeometry(JNIEnv *env, jclass clazz, jlong native_pointer, jfloatArray edge_lines,
+                              jfloatArray arrow_lines, jfloatArray points, jfloat line_width,
+                              jfloat radius, jfloat offset_x, jfloat offset_y,
+                              jfloatArray label_rects) {
     CPP_OBJECT;
+    // 在锁外复制参数，避免 GL 线程等待
+    std::vector<GLfloat> edge_data(env->GetArrayLength(edge_lines));
+    env->GetFloatArrayRegion(edge_lines, 0, edge_data.size(), edge_data.data());
+    std::vector<GLfloat> arrow_data(env->GetArrayLength(arrow_lines));
+    env->GetFloatArrayRegion(arrow_lines, 0, arrow_data.size(), arrow_data.data());
+    std::vector<GLfloat> point_data(env->GetArrayLength(points));
+    env->GetFloatArrayRegion(points, 0, point_data.size(), point_data.data());
+    std::vector<GLfloat> label_data(env->GetArrayLength(label_rects));
+    env->GetFloatArrayRegion(label_rects, 0, label_data.size(), label_data.data());
+
+    auto &board = object->board;
+    std::lock_guard<std::mutex> lock(board.mutex);
+    board.edge_count = std::min(edge_data.size() / 4, arrow_data.size() / 8);
+    board.point_count = point_data.size() / 3;
+    board.points.swap(point_data);
+    board.line_width = line_width;
+    board.radius = radius;
+    board.offset_x = offset_x;
+    board.offset_y = offset_y;
+    tessellateBoard(board, edge_data, arrow_data, label_data);
+    board.vertices_dirty = true;
+    // 在收到对应的状态之前不绘制
+    board.edge_colors.clear();
+    board.point_colors.clear();
+    board.visible = false;
+}
 
-    switch (rand() % 3) {
-        case 0:
-            newParticle(object, x, y, rand(), 1, 0, 0);
-            break;
-        case 1:
-            newParticle(object, x, y, rand(), 0, 1, 0);
-            break;
-        case 2:
-            newParticle(object, x, y, rand(), 0, 0, 1);
-            break;
+void JNICALL setBoardState(JNIEnv *env, jclass clazz, jlong native_pointer, jintArray edge_colors,
+                           jintArray point_colors, jint hint_point, jint hint_color,
+                           jint head_point, jint head_color, jboolean pressed, jfloat press_x,
+                           jfloat press_y) {
+    CPP_OBJECT;
+    auto &board = object->board;
+    std::lock_guard<std::mutex> lock(board.mutex);
+    const int edge_count = board.edge_count;
+    const int point_count = board.point_count;
+    if (env->GetArrayLength(edge_colors) < edge_count || env->GetArrayLength(point_colors) < point_count) {
+        return;
     }
-}
\ No newline at end of file
+    board.edge_colors.resize(edge_count);
+    env->GetIntArrayRegion(edge_colors, 0, edge_count, board.edge_colors.data());
+    board.point_colors.resize(point_count);
+    env->GetIntArrayRegion(point_colors, 0, point_count, board.point_colors.data());
+    board.hint_point = hint_point < point_count ? hint_point : -1;
+    board.hint_color = hint_color;
+    board.head_point = head_point < point_count ? head_point : -1;
+    board.head_color = head_color;
+    board.pressed = pressed;
+    board.press_x = press_x;
+    board.press_y = press_y;
+    board.colors_dirty = true;
+    board.visible = true;
+}
+
+void JNICALL setBoardTexture(JNIEnv *env, jclass clazz, jlong native_pointer, jint texture) {
+    CPP_OBJECT;
+    std::lock_guard<std::mutex> lock(object->board.mutex);
+    object->board.label_texture = texture;
+}
+
+void JNICALL clearBoard(JNIEnv *env, jclass clazz, jlong native_pointer) {
+    CPP_OBJECT;
+    std::lock_guard<std::mutex> lock(object->board.mutex);
+    object->board.visible = false;
+}
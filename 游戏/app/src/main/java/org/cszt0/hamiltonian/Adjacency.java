@@ -0,0 +1,86 @@
+package org.cszt0.hamiltonian;
+
+import java.util.Arrays;
+
+/**
+ * 压缩邻接表（CSR），只记录可以通行的方向，并带有 (起点, 终点) 到边下标的散列表
+ */
+public class Adjacency {
+
+    final int size;
+    // 第 i 个点的出边为 [start[i], start[i + 1])
+    final int[] start;
+    final int[] point;
+    final int[] edge;
+
+    // 开放寻址散列表，键为 from * size + to，值为 graph.edgeList 中的下标
+    private final long[] keys;
+    private final int[] values;
+    private final int shift;
+
+    public Adjacency(Graph graph) {
+        size = graph.pointList.size();
+        start = new int[size + 1];
+        for (Graph.Edge edge : graph.edgeList) {
+            if (edge.direct != Graph.Edge.Direct.A2B) start[edge.pointB + 1]++;
+            if (edge.direct != Graph.Edge.Direct.B2A) start[edge.pointA + 1]++;
+        }
+        for (int i = 0; i < size; i++) {
+            start[i + 1] += start[i];
+        }
+        int arcCount = start[size];
+        point = new int[arcCount];
+        edge = new int[arcCount];
+        int[] fill = new int[size];
+        System.arraycopy(start, 0, fill, 0, size);
+        for (int i = 0; i < graph.edgeList.size(); i++) {
+            Graph.Edge edge = graph.edgeList.get(i);
+            if (edge.direct != Graph.Edge.Direct.A2B) {
+                point[fill[edge.pointB]] = edge.pointA;
+                this.edge[fill[edge.pointB]++] = i;
+            }
+            if (edge.direct != Graph.Edge.Direct.B2A) {
+                point[fill[edge.pointA]] = edge.pointB;
+                this.edge[fill[edge.pointA]++] = i;
+            }
+        }
+        // 散列表容量为不小于两倍弧数的 2 的幂
+        int bits = 1;
+        while ((1 << bits) < arcCount * 2) bits++;
+        shift = 64 - bits;
+        keys = new long[1 << bits];
+        values = new int[1 << bits];
+        Arrays.fill(keys, -1);
+        for (int from = 0; from < size; from++) {
+            for (int arc = start[from]; arc < start[from + 1]; arc++) {
+                long key = (long) from * size + point[arc];
+                int slot = slot(key);
+                while (keys[slot] != -1 && keys[slot] != key) {
+                    slot = (slot + 1) & (keys.length - 1);
+                }
+                // 重复的边保留 edgeList 中靠前的一条
+                if (keys[slot] == -1) {
+                    keys[slot] = key;
+                    values[slot] = edge[arc];
+                }
+            }
+        }
+    }
+
+    /**
+     * 返回可以从 from 走到 to 的边在 graph.edgeList 中的下标，不存在时返回 -1
+     */
+    public int edgeIndex(int from, int to) {
+        long key = (long) from * size + to;
+        int slot = slot(key);
+        while (keys[slot] != -1) {
+            if (keys[slot] == key) return values[slot];
+            slot = (slot + 1) & (keys.length - 1);
+        }
+        return -1;
+    }
+
+    private int slot(long key) {
+        return (int) ((key * 0x9e3779b97f4a7c15L) >>> shift);
+    }
+}
@@ -0,0 +1,92 @@
+package org.cszt0.hamiltonian;
+
+import java.util.List;
+
+/**
+ * 某张图在某个控件大小下的绘制数据，图或大小变化时重新生成，绘制每一帧时不再计算
+ */
+public class BoardGeometry {
+
+    final int pointCount;
+    final int edgeCount;
+    final float width, height;
+    final float radius;
+    final float lineWidth;
+    // 点的像素坐标
+    final float[] pointX, pointY;
+    // 需要路过两次的点画成方形
+    final boolean[] square;
+    // 每条边 4 个数 (ax, ay, bx, by)，可直接用于 drawLines
+    final float[] edgeLines;
+    // 每条边 8 个数，为箭头的两条线段；无方向的边 hasArrow 为 false
+    final float[] arrowLines;
+    final boolean[] hasArrow;
+    // 能量文字，能量为 0 的点为 null
+    final String[] labels;
+
+    public BoardGeometry(Graph graph, float width, float height) {
+        List<Graph.Point> pointList = graph.pointList;
+        List<Graph.Edge> edgeList = graph.edgeList;
+        pointCount = pointList.size();
+        edgeCount = edgeList.size();
+        this.width = width;
+        this.height = height;
+        radius = Math.min(width, height) / 20;
+        lineWidth = radius / 2;
+
+        pointX = new float[pointCount];
+        pointY = new float[pointCount];
+        square = new boolean[pointCount];
+        labels = new String[pointCount];
+        for (int i = 0; i < pointCount; i++) {
+            Graph.Point point = pointList.get(i);
+            pointX[i] = width * point.x / 0x7fffffff;
+            pointY[i] = height * point.y / 0x7fffffff;
+            square[i] = point.isTwice;
+            if (point.energy != 0) {
+                labels[i] = String.valueOf(point.energy);
+            }
+        }
+
+        edgeLines = new float[edgeCount * 4];
+        arrowLines = new float[edgeCount * 8];
+        hasArrow = new boolean[edgeCount];
+        for (int i = 0; i < edgeCount; i++) {
+            Graph.Edge edge = edgeList.get(i);
+            float ax = pointX[edge.pointA];
+            float ay = pointY[edge.pointA];
+            float bx = pointX[edge.pointB];
+            float by = pointY[edge.pointB];
+            edgeLines[i * 4] = ax;
+            edgeLines[i * 4 + 1] = ay;
+            edgeLines[i * 4 + 2] = bx;
+            edgeLines[i * 4 + 3] = by;
+            if (edge.direct != Graph.Edge.Direct.None) {
+                hasArrow[i] = true;
+                float cx = (ax + bx) / 2;
+                float cy = (ay + by) / 2;
+                float length = lineWidth * 2;
+                final float angle = 0.5F;
+                double angle1 = Math.atan2(ay - by, ax - bx);
+                double angle2 = Math.atan2(ax - bx, ay - by);
+                double a, b;
+                if (edge.direct == Graph.Edge.Direct.A2B) {
+                    a = angle1 - angle - Math.PI;
+                    b = angle2 - angle - Math.PI;
+                } else {
+                    a = angle1 - angle;
+                    b = angle2 - angle;
+                }
+                int offset = i * 8;
+                arrowLines[offset] = cx;
+                arrowLines[offset + 1] = cy;
+                arrowLines[offset + 2] = (float) (cx - length * Math.cos(a));
+                arrowLines[offset + 3] = (float) (cy - length * Math.sin(a));
+                arrowLines[offset + 4] = cx;
+                arrowLines[offset + 5] = cy;
+                arrowLines[offset + 6] = (float) (cx - length * Math.sin(b));
+                arrowLines[offset + 7] = (float) (cy - length * Math.cos(b));
+            }
+        }
+    }
+}
@@ -0,0 +1,221 @@
+package org.cszt0.hamiltonian;
+
+/**
+ * 在每一步之后快速判断剩余的点是否已经不可能全部走完。
+ * 只做必要条件检查：返回 true 时一定无解，返回 false 时不保证有解。
+ */
+public class DeadEndDetector {
+
+    private final int size;
+    private final int words;
+    private final int end;
+    // 有向邻接位图与无向邻接位图
+    private final long[] rows;
+    private final long[] undirectedRows;
+    // 整张图的割点，加载时计算一次；走的过程中新出现的割点不做检查
+    private final int[] articulationPoints;
+    // 还需要路过的点，与还需要路过两次的点
+    private final long[] remaining;
+    private final long[] twice;
+    // 遍历时复用的位图
+    private final long[] reached;
+    private final long[] frontier;
+    private final long[] side;
+
+    public DeadEndDetector(Adjacency adjacency, int[] pointReachCount, int end) {
+        size = pointReachCount.length;
+        words = (size + 63) >>> 6;
+        this.end = end;
+        rows = new long[size * words];
+        undirectedRows = new long[size * words];
+        for (int i = 0; i < size; i++) {
+            for (int arc = adjacency.start[i]; arc < adjacency.start[i + 1]; arc++) {
+                int j = adjacency.point[arc];
+                rows[i * words + (j >>> 6)] |= 1L << j;
+                undirectedRows[i * words + (j >>> 6)] |= 1L << j;
+                undirectedRows[j * words + (i >>> 6)] |= 1L << i;
+            }
+        }
+        remaining = new long[words];
+        twice = new long[words];
+        for (int i = 0; i < size; i++) {
+            update(i, pointReachCount[i]);
+        }
+        reached = new long[words];
+        frontier = new long[words];
+        side = new long[words];
+        articulationPoints = findArticulationPoints();
+    }
+
+    /**
+     * 点的剩余路过次数发生变化后调用
+     */
+    public void update(int index, int reachCount) {
+        int w = index >>> 6;
+        long bit = 1L << index;
+        if (reachCount > 0) remaining[w] |= bit;
+        else remaining[w] &= ~bit;
+        if (reachCount > 1) twice[w] |= bit;
+        else twice[w] &= ~bit;
+    }
+
+    /**
+     * @param head  当前所在的点
+     * @param depth 剩余的步数
+     */
+    public boolean isStuck(int head, int depth) {
+        if (depth == 0) return false;
+        return isCutOff(head) || hasTooManyEndpoints() || violatesArticulation(head);
+    }
+
+    // 从当前点出发，沿有向边经过剩余的点无法到达所有剩余的点
+    private boolean isCutOff(int head) {
+        flood(rows, head, -1, true);
+        for (int w = 0; w < words; w++) {
+            if ((remaining[w] & ~reached[w]) != 0) return true;
+        }
+        return false;
+    }
+
+    // 没有出路的点只能作为最后一步（有终点时则只能作为终点前一步）
+    private boolean hasTooManyEndpoints() {
+        int forced = 0;
+        for (int w = 0; w < words; w++) {
+            long candidates = remaining[w] & ~twice[w];
+            while (candidates != 0) {
+                long bit = candidates & -candidates;
+                candidates ^= bit;
+                int index = (w << 6) | Long.numberOfTrailingZeros(bit);
+                if (index == end || hasExit(index)) continue;
+                if (++forced > 1) return true;
+                if (end != -1 && (remaining[end >>> 6] & (1L << end)) != 0
+                        && (rows[index * words + (end >>> 6)] & (1L << end)) == 0) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private boolean hasExit(int index) {
+        int row = index * words;
+        for (int w = 0; w < words; w++) {
+            long exits = rows[row + w] & remaining[w];
+            if (w == index >>> 6) exits &= ~(1L << index);
+            if (end != -1 && w == end >>> 6) exits &= ~(1L << end);
+            if (exits != 0) return true;
+        }
+        return false;
+    }
+
+    // 剩余的割点只能穿过一次：另一侧必须连成一片，且终点不能留在这一侧
+    private boolean violatesArticulation(int head) {
+        for (int point : articulationPoints) {
+            int w = point >>> 6;
+            long bit = 1L << point;
+            if (point == head || (remaining[w] & bit) == 0 || (twice[w] & bit) != 0) continue;
+            flood(undirectedRows, head, point, false);
+            reached[head >>> 6] |= 1L << head;
+            int far = -1;
+            for (int i = 0; i < words && far == -1; i++) {
+                long unreached = remaining[i] & ~reached[i];
+                if (i == w) unreached &= ~bit;
+                if (unreached != 0) far = (i << 6) | Long.numberOfTrailingZeros(unreached);
+            }
+            if (far == -1) continue;
+            if (end != -1 && end != point && (reached[end >>> 6] & (1L << end)) != 0) return true;
+            System.arraycopy(reached, 0, side, 0, words);
+            flood(undirectedRows, far, point, false);
+            reached[far >>> 6] |= 1L << far;
+            for (int i = 0; i < words; i++) {
+                long unreached = remaining[i] & ~side[i] & ~reached[i];
+                if (i == w) unreached &= ~bit;
+                if (unreached != 0) return true;
+            }
+        }
+        return false;
+    }
+
+    // 从 from 出发经过剩余的点（跳过 skip）遍历，结果写入 reached；blockEnd 时终点不能作为中转
+    private void flood(long[] rows, int from, int skip, boolean blockEnd) {
+        for (int w = 0; w < words; w++) {
+            reached[w] = 0;
+            frontier[w] = 0;
+        }
+        expand(rows, from, skip);
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int w = 0; w < words; w++) {
+                while (frontier[w] != 0) {
+                    long bit = frontier[w] & -frontier[w];
+                    frontier[w] ^= bit;
+                    int index = (w << 6) | Long.numberOfTrailingZeros(bit);
+                    if (blockEnd && index == end) continue;
+                    expand(rows, index, skip);
+                    changed = true;
+                }
+            }
+        }
+    }
+
+    private void expand(long[] rows, int index, int skip) {
+        int row = index * words;
+        for (int w = 0; w < words; w++) {
+            long next = rows[row + w] & remaining[w] & ~reached[w];
+            if (skip != -1 && w == skip >>> 6) next &= ~(1L << skip);
+            reached[w] |= next;
+            frontier[w] |= next;
+        }
+    }
+
+    private int[] findArticulationPoints() {
+        int[] order = new int[size];
+        int[] low = new int[size];
+        boolean[] articulation = new boolean[size];
+        int[] counter = {0};
+        for (int i = 0; i < size; i++) {
+            if (order[i] == 0) {
+                dfs(i, -1, order, low, articulation, counter);
+            }
+        }
+        int count = 0;
+        for (boolean b : articulation) {
+            if (b) count++;
+        }
+        int[] result = new int[count];
+        count = 0;
+        for (int i = 0; i < size; i++) {
+            if (articulation[i]) result[count++] = i;
+        }
+        return result;
+    }
+
+    private void dfs(int index, int parent, int[] order, int[] low, boolean[] articulation, int[] counter) {
+        order[index] = low[index] = ++counter[0];
+        int children = 0;
+        int row = index * words;
+        for (int w = 0; w < words; w++) {
+            long neighbours = undirectedRows[row + w];
+            while (neighbours != 0) {
+                long bit = neighbours & -neighbours;
+                neighbours ^= bit;
+                int next = (w << 6) | Long.numberOfTrailingZeros(bit);
+                if (next == parent || next == index) continue;
+                if (order[next] == 0) {
+                    children++;
+                    dfs(next, index, order, low, articulation, counter);
+                    low[index] = Math.min(low[index], low[next]);
+                    if (parent != -1 && low[next] >= order[index]) {
+                        articulation[index] = true;
+                    }
+                } else {
+                    low[index] = Math.min(low[index], order[next]);
+                }
+            }
+        }
+        if (parent == -1 && children > 1) {
+            articulation[index] = true;
+        }
+    }
+}
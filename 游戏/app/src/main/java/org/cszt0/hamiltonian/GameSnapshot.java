@@ -0,0 +1,101 @@
+package org.cszt0.hamiltonian;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * 进行中的一局游戏：关卡、已走的路线与已用时间。
+ * 编码为版本号后接若干无符号变长整数 (每字节 7 位，最高位表示后面还有字节)：
+ * 章节、关卡、已用毫秒数、路线长度、路线上的各点
+ */
+public class GameSnapshot {
+
+    private static final int VERSION = 1;
+
+    public final int chapter;
+    public final int checkpoint;
+    public final long elapsed;
+    public final int[] road;
+
+    public GameSnapshot(int chapter, int checkpoint, long elapsed, int[] road) {
+        this.chapter = chapter;
+        this.checkpoint = checkpoint;
+        this.elapsed = elapsed;
+        this.road = road;
+    }
+
+    public byte[] encode() {
+        byte[] data = new byte[1 + 5 + 5 + 10 + 5 + road.length * 5];
+        int offset = 0;
+        data[offset++] = VERSION;
+        offset = writeVarint(data, offset, chapter);
+        offset = writeVarint(data, offset, checkpoint);
+        offset = writeVarint(data, offset, elapsed);
+        offset = writeVarint(data, offset, road.length);
+        for (int point : road) {
+            offset = writeVarint(data, offset, point);
+        }
+        return Arrays.copyOf(data, offset);
+    }
+
+    public static GameSnapshot decode(byte[] data) throws IOException {
+        if (data.length == 0 || data[0] != VERSION) {
+            throw new IOException("不支持的存档版本");
+        }
+        Reader reader = new Reader(data);
+        int chapter = reader.nextInt();
+        int checkpoint = reader.nextInt();
+        long elapsed = reader.next();
+        int length = reader.nextInt();
+        // 每个点至少占一个字节
+        if (length > data.length) {
+            throw new IOException("存档已损坏");
+        }
+        int[] road = new int[length];
+        for (int i = 0; i < length; i++) {
+            road[i] = reader.nextInt();
+        }
+        return new GameSnapshot(chapter, checkpoint, elapsed, road);
+    }
+
+    private static int writeVarint(byte[] data, int offset, long value) {
+        while ((value & ~0x7fL) != 0) {
+            data[offset++] = (byte) ((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        data[offset++] = (byte) value;
+        return offset;
+    }
+
+    private static class Reader {
+        private final byte[] data;
+        private int offset = 1;
+
+        Reader(byte[] data) {
+            this.data = data;
+        }
+
+        long next() throws IOException {
+            long result = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                if (offset == data.length) {
+                    throw new IOException("存档已损坏");
+                }
+                byte b = data[offset++];
+                result |= (long) (b & 0x7f) << shift;
+                if (b >= 0) {
+                    return result;
+                }
+            }
+            throw new IOException("存档已损坏");
+        }
+
+        int nextInt() throws IOException {
+            long value = next();
+            if (value > Integer.MAX_VALUE) {
+                throw new IOException("存档已损坏");
+            }
+            return (int) value;
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package org.cszt0.hamiltonian;
+
+import java.util.Arrays;
+
+/**
+ * 一局游戏的规则与状态：走法检查、撤销、完成与走不通的判断。
+ * 不依赖 Android，创建后走一步、撤销一步都不分配对象；不是线程安全的
+ */
+public class GameState {
+
+    private final Level level;
+    private final DeadEndDetector deadEndDetector;
+    // 走过的点，按总步数分配
+    private final int[] road;
+    private int roadLength;
+    private final int[] useRoadCount;
+    private final int[] pointReachCount;
+    private int energy;
+    private int depth;
+    private boolean stuck;
+
+    public GameState(Level level) {
+        this(level, new DeadEndDetector(level.adjacency, level.pointReachCount, level.end));
+    }
+
+    /**
+     * @param detector 按关卡初始状态创建、尚未使用的检测器，之后由本对象更新
+     */
+    public GameState(Level level, DeadEndDetector detector) {
+        this.level = level;
+        deadEndDetector = detector;
+        depth = level.depth;
+        road = new int[depth];
+        useRoadCount = new int[level.graph.edgeList.size()];
+        pointReachCount = level.pointReachCount.clone();
+    }
+
+    /**
+     * 按规则判断能否走到 index
+     */
+    public boolean canMove(int index) {
+        if (index < 0 || index >= pointReachCount.length || pointReachCount[index] == 0) return false;
+        int energyRequire = level.pointEnergyRequire[index];
+        if (roadLength == 0) {
+            if (level.start != -1 && index != level.start) return false;
+            return energyRequire >= 0 && (depth == 1 || pointReachCount[index] > 1 || index != level.end);
+        }
+        return level.adjacency.edgeIndex(road[roadLength - 1], index) != -1
+                && (depth == 1 || index != level.end) && energy + energyRequire >= 0;
+    }
+
+    /**
+     * 走到 index，不符合规则时不改变状态并返回 false
+     */
+    public boolean tryMove(int index) {
+        if (!canMove(index)) return false;
+        advance(index);
+        stuck = deadEndDetector.isStuck(index, depth);
+        return true;
+    }
+
+    /**
+     * 撤销一步，没有走过任何点时返回 false
+     */
+    public boolean undo() {
+        if (roadLength == 0) return false;
+        int index = road[--roadLength];
+        pointReachCount[index]++;
+        depth++;
+        energy -= level.pointEnergyRequire[index];
+        deadEndDetector.update(index, pointReachCount[index]);
+        if (roadLength != 0) {
+            int edge = level.adjacency.edgeIndex(road[roadLength - 1], index);
+            if (edge != -1) {
+                useRoadCount[edge]--;
+            }
+        }
+        stuck = roadLength != 0 && deadEndDetector.isStuck(road[roadLength - 1], depth);
+        return true;
+    }
+
+    /**
+     * 撤销全部步骤
+     */
+    public void reset() {
+        while (roadLength != 0) undo();
+    }
+
+    /**
+     * 从头重放保存的路线：不逐步检查规则，只在最后判断是否走不通。
+     * 路线与关卡明显不符时停在不符的那一步
+     */
+    public void restore(int[] path) {
+        reset();
+        for (int index : path) {
+            if (index < 0 || index >= pointReachCount.length || pointReachCount[index] == 0) break;
+            advance(index);
+        }
+        stuck = roadLength != 0 && deadEndDetector.isStuck(road[roadLength - 1], depth);
+    }
+
+    // 只更新路线与计数，不判断是否走不通
+    private void advance(int index) {
+        if (roadLength != 0) {
+            int edge = level.adjacency.edgeIndex(road[roadLength - 1], index);
+            if (edge != -1) {
+                useRoadCount[edge]++;
+            }
+        }
+        road[roadLength++] = index;
+        pointReachCount[index]--;
+        depth--;
+        energy += level.pointEnergyRequire[index];
+        deadEndDetector.update(index, pointReachCount[index]);
+    }
+
+    public boolean isFinished() {
+        return depth == 0;
+    }
+
+    /**
+     * 当前路线是否已确定无法完成
+     */
+    public boolean isStuck() {
+        return stuck;
+    }
+
+    public int getEnergy() {
+        return energy;
+    }
+
+    /**
+     * 剩余的步数
+     */
+    public int getDepth() {
+        return depth;
+    }
+
+    public int getRoadLength() {
+        return roadLength;
+    }
+
+    /**
+     * 最后走到的点，还没有走时为 -1
+     */
+    public int lastPoint() {
+        return roadLength == 0 ? -1 : road[roadLength - 1];
+    }
+
+    /**
+     * 当前已走的路线
+     */
+    public int[] getRoad() {
+        return Arrays.copyOf(road, roadLength);
+    }
+
+    /**
+     * 点还需要路过的次数
+     */
+    public int getReachCount(int index) {
+        return pointReachCount[index];
+    }
+
+    public int[] copyReachCount() {
+        return pointReachCount.clone();
+    }
+
+    public boolean isEdgeUsed(int edge) {
+        return useRoadCount[edge] > 0;
+    }
+}
@@ -2,7 +2,7 @@ package org.cszt0.hamiltonian;
 
 import android.annotation.SuppressLint;
 import android.content.Context;
-import android.content.res.AssetManager;
+import android.graphics.Bitmap;
 import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.Paint;
@@ -10,27 +10,49 @@ import android.util.AttributeSet;
 import android.view.MotionEvent;
 import android.view.View;
 
-import java.io.BufferedInputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.util.LinkedList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 public class GameView extends View {
+    private static final ExecutorService hintExecutor = Executors.newSingleThreadExecutor();
+    private static final ExecutorService loadExecutor = Executors.newSingleThreadExecutor();
+    // 一次提示最多搜索的局面数，超过时回调 HintEngine.UNKNOWN
+    private static final long HINT_NODE_LIMIT = 20_000_000L;
+    // 统计信息每秒更新一次，每帧生成字符串产生的垃圾回收会影响统计本身
+    private static final long METRICS_REFRESH_INTERVAL = 1_000_000_000L;
+
     private final Paint paint;
     private Graph graph;
 
-    private final LinkedList<Integer> road;
-    private int[] useRoadCount;
-    private int[] pointReachCount;
-    private int[] pointEnergyRequire;
-    private boolean[][] edgeAccess;
+    // 规则与路线，加载关卡时创建
+    private GameState state;
     private int start;
-    private int end;
-    private int energy;
-    private int depth;
     private boolean pressed;
     private float pressX, pressY;
+    // 第一个尚未绘制的触摸事件的时间，只在打开 Hamiltonian.METRICS 时使用
+    private long touchTime;
+    private String[] metricsLines;
+    private long metricsTime;
+    // 绘制与触摸用的几何数据，随图与控件大小更新
+    private BoardGeometry geometry;
+    private float textOffsetY;
+    private float[] usedLines, unusedLines;
+    private float[] usedArrows, unusedArrows;
+    private TouchGrid touchGrid;
+    // 不为 null 时由 NativeRenderer 绘制棋盘，每帧只传递状态
+    private NativeRenderer boardRenderer;
+    private int[] edgeColors, pointColors;
+    private HintEngine hintEngine;
+    private int hintPoint;
+    // 提示线程据此判断局面是否已变化并提前结束搜索
+    private volatile int stateVersion;
+    // 每次开始或取消加载时加一，用于丢弃过期的加载结果
+    private int loadGeneration;
+    private Future<?> loadTask;
 
     private GameListener listener;
 
@@ -39,113 +61,257 @@ public class GameView extends View {
         paint = new Paint();
         paint.setAntiAlias(true);
         paint.setTextAlign(Paint.Align.CENTER);
-        road = new LinkedList<>();
-    }
-
-    public void loadGraph(String path) {
-        try {
-            AssetManager assetManager = getContext().getAssets();
-            InputStream inputStream = assetManager.open(path);
-            BufferedInputStream bufferedInputStream = new BufferedInputStream(inputStream);
-            graph = Graph.readFromStream(bufferedInputStream);
-            generateGraphData();
-            postInvalidate();
-            setEnabled(true);
-        } catch (IOException e) {
-            throw new RuntimeException(e);
-        }
-    }
-
-    private void generateGraphData() {
-        road.clear();
-        int size = graph.pointList.size();
-        start = -1;
-        end = -1;
-        energy = 0;
-        depth = 0;
-        // 寻找起点、终点
-        for (Graph.Point point : graph.pointList) {
-            if (point.isStart) start = point.index;
-            if (point.isEnd) end = point.index;
-            depth += point.isTwice ? 2 : 1;
-        }
-        // 点路过次数、能量
-        pointReachCount = new int[size];
-        pointEnergyRequire = new int[size];
-        for (Graph.Point point : graph.pointList) {
-            pointReachCount[point.index] = point.isTwice ? 2 : 1;
-            pointEnergyRequire[point.index] = point.energy;
-        }
-        // 邻接矩阵
-        useRoadCount = new int[graph.edgeList.size()];
-        edgeAccess = new boolean[size][size];
-        for (Graph.Edge edge : graph.edgeList) {
-            if (edge.direct != Graph.Edge.Direct.A2B) {
-                edgeAccess[edge.pointB][edge.pointA] = true;
-            }
-            if (edge.direct != Graph.Edge.Direct.B2A) {
-                edgeAccess[edge.pointA][edge.pointB] = true;
+    }
+
+    /**
+     * 加载关卡，见 {@link LevelCache}
+     */
+    public void loadLevel(Level level) {
+        cancelLoad();
+        applyLevel(level, new DeadEndDetector(level.adjacency, level.pointReachCount, level.end), null);
+    }
+
+    /**
+     * 在后台线程加载关卡并完成预计算，完成后在主线程一次性切换；
+     * 加载期间继续显示原来的图，但不响应操作。再次调用或调用 {@link #cancelLoad} 会取消本次加载。
+     * 读取或预计算失败（包括关卡数据错误导致的 RuntimeException）时回调 {@link LoadListener#onLoadFailed}
+     */
+    public void loadLevelAsync(LevelLoader loader, LoadListener loadListener) {
+        cancelLoad();
+        setEnabled(false);
+        int generation = loadGeneration;
+        int width = getWidth();
+        int height = getHeight();
+        long loadStart = Hamiltonian.METRICS ? System.nanoTime() : 0;
+        loadTask = loadExecutor.submit(() -> {
+            try {
+                Level level = loader.load();
+                DeadEndDetector detector = new DeadEndDetector(level.adjacency, level.pointReachCount, level.end);
+                BoardGeometry geometry = width == 0 || height == 0 ? null : new BoardGeometry(level.graph, width, height);
+                post(() -> {
+                    if (generation != loadGeneration) return;
+                    loadTask = null;
+                    applyLevel(level, detector, geometry);
+                    if (Hamiltonian.METRICS) {
+                        Metrics.LEVEL_LOAD.record(System.nanoTime() - loadStart);
+                    }
+                    loadListener.onLoaded();
+                });
+            } catch (IOException | RuntimeException e) {
+                post(() -> {
+                    if (generation != loadGeneration) return;
+                    loadTask = null;
+                    loadListener.onLoadFailed(e);
+                });
             }
+        });
+    }
+
+    /**
+     * 取消正在进行的加载，已经显示的图不受影响
+     */
+    public void cancelLoad() {
+        loadGeneration++;
+        if (loadTask != null) {
+            loadTask.cancel(true);
+            loadTask = null;
         }
+    }
+
+    private void applyLevel(Level level, DeadEndDetector detector, BoardGeometry geometry) {
+        graph = level.graph;
+        generateGraphData(level, detector, geometry);
+        postInvalidate();
+        setEnabled(true);
+    }
+
+    private void generateGraphData(Level level, DeadEndDetector detector, BoardGeometry geometry) {
+        hintEngine = null;
+        hintPoint = -1;
+        stateVersion++;
+        start = level.start;
+        state = new GameState(level, detector);
+        updateLayout(geometry);
         // 起点
         if (start != -1) {
             gotoPointImpl(start);
         }
     }
 
+    @Override
+    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        super.onSizeChanged(w, h, oldw, oldh);
+        updateLayout(null);
+    }
+
+    // prepared 为后台按当前大小算好的几何数据，可以为 null
+    private void updateLayout(BoardGeometry prepared) {
+        Graph graph = this.graph;
+        float widgetWidth = getWidth();
+        float widgetHeight = getHeight();
+        if (graph == null || widgetWidth == 0 || widgetHeight == 0) {
+            geometry = null;
+            touchGrid = null;
+            return;
+        }
+        BoardGeometry geometry = prepared;
+        if (geometry == null || geometry.width != widgetWidth || geometry.height != widgetHeight) {
+            geometry = new BoardGeometry(graph, widgetWidth, widgetHeight);
+        }
+        paint.setTextSize(geometry.radius * 1.2F);
+        textOffsetY = (paint.descent() - paint.ascent()) / 4;
+        if (usedLines == null || usedLines.length < geometry.edgeCount * 4) {
+            usedLines = new float[geometry.edgeCount * 4];
+            unusedLines = new float[geometry.edgeCount * 4];
+            usedArrows = new float[geometry.edgeCount * 8];
+            unusedArrows = new float[geometry.edgeCount * 8];
+        }
+        touchGrid = new TouchGrid(geometry.pointX, geometry.pointY, geometry.pointCount, widgetWidth, widgetHeight, geometry.radius);
+        this.geometry = geometry;
+        if (boardRenderer != null) {
+            uploadBoardGeometry(geometry);
+        }
+    }
+
+    /**
+     * 改为由 NativeRenderer 绘制棋盘，传入 null 时恢复为 Canvas 绘制
+     */
+    public void setBoardRenderer(NativeRenderer renderer) {
+        if (boardRenderer != null) {
+            boardRenderer.clearBoard();
+        }
+        boardRenderer = renderer;
+        if (renderer != null && geometry != null) {
+            uploadBoardGeometry(geometry);
+        }
+        invalidate();
+    }
+
+    // 把所有能量文字画到一张贴图上，每格宽 4r、高 2r
+    private void uploadBoardGeometry(BoardGeometry geometry) {
+        if (edgeColors == null || edgeColors.length < geometry.edgeCount) {
+            edgeColors = new int[geometry.edgeCount];
+        }
+        if (pointColors == null || pointColors.length < geometry.pointCount) {
+            pointColors = new int[geometry.pointCount];
+        }
+        int labelCount = 0;
+        for (String label : geometry.labels) {
+            if (label != null) labelCount++;
+        }
+        float[] labelRects = new float[geometry.pointCount * 4];
+        if (labelCount == 0) {
+            Arrays.fill(labelRects, -1);
+            boardRenderer.setBoardGeometry(this, geometry, null, labelRects);
+            return;
+        }
+        int cellWidth = (int) Math.ceil(geometry.radius * 4);
+        int cellHeight = (int) Math.ceil(geometry.radius * 2);
+        int columns = (int) Math.ceil(Math.sqrt(labelCount));
+        int rows = (labelCount + columns - 1) / columns;
+        int atlasWidth = columns * cellWidth;
+        int atlasHeight = rows * cellHeight;
+        Bitmap labels = Bitmap.createBitmap(atlasWidth, atlasHeight, Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(labels);
+        paint.setColor(Color.BLACK);
+        int cell = 0;
+        for (int i = 0; i < geometry.pointCount; i++) {
+            if (geometry.labels[i] == null) {
+                labelRects[i * 4] = -1;
+                continue;
+            }
+            int left = cell % columns * cellWidth;
+            int top = cell / columns * cellHeight;
+            canvas.drawText(geometry.labels[i], left + cellWidth / 2F, top + cellHeight / 2F + textOffsetY, paint);
+            labelRects[i * 4] = (float) left / atlasWidth;
+            labelRects[i * 4 + 1] = (float) top / atlasHeight;
+            labelRects[i * 4 + 2] = (float) (left + cellWidth) / atlasWidth;
+            labelRects[i * 4 + 3] = (float) (top + cellHeight) / atlasHeight;
+            cell++;
+        }
+        boardRenderer.setBoardGeometry(this, geometry, labels, labelRects);
+    }
+
+    @Override
+    protected void onVisibilityChanged(View changedView, int visibility) {
+        super.onVisibilityChanged(changedView, visibility);
+        // 所在的 Fragment 被隐藏时，GL 层上的棋盘也要一并隐藏；重新显示后在 onDraw 中恢复
+        if (boardRenderer != null && !isShown()) {
+            boardRenderer.clearBoard();
+        }
+    }
+
     public void clearGraph() {
         graph = null;
+        geometry = null;
+        touchGrid = null;
+        if (boardRenderer != null) {
+            boardRenderer.clearBoard();
+        }
         postInvalidate();
         setEnabled(true);
     }
 
     public void gotoLast() {
-        if (!isEnabled()) return;
-        if (road.isEmpty()) return;
-        int oldEnergy = energy;
-        gotoLastImpl();
-        if (road.isEmpty() && start != -1) {
+        if (!isEnabled() || state == null) return;
+        int oldEnergy = state.getEnergy();
+        if (!state.undo()) return;
+        onStateChanged();
+        if (state.getRoadLength() == 0 && start != -1) {
             gotoPointImpl(start);
         }
-        if (oldEnergy != energy) {
+        if (oldEnergy != state.getEnergy()) {
             onEnergyChange();
         }
         postInvalidate();
     }
 
-    private void gotoLastImpl() {
-        int index = road.removeLast();
-        pointReachCount[index]++;
-        depth++;
-        energy -= pointEnergyRequire[index];
-        if (!road.isEmpty()) {
-            int from = road.getLast();
-            int to = index;
-            if (from > to) {
-                to = from;
-                from = index;
-            }
-            for (int i = 0; i < graph.edgeList.size(); i++) {
-                Graph.Edge edge = graph.edgeList.get(i);
-                if (edge.pointA == from && edge.pointB == to) {
-                    useRoadCount[i]--;
-                    break;
-                }
-            }
-        }
-    }
-
     public void clearRoad() {
         setEnabled(true);
-        int oldEnergy = energy;
-        while (!road.isEmpty()) gotoLastImpl();
+        if (state == null) return;
+        int oldEnergy = state.getEnergy();
+        state.reset();
+        onStateChanged();
         if (start != -1) gotoPointImpl(start);
-        if (oldEnergy != energy) {
+        if (oldEnergy != state.getEnergy()) {
             onEnergyChange();
         }
         postInvalidate();
     }
 
+    /**
+     * 在后台线程计算提示，结果为下一步可走的点、{@link HintEngine#UNSOLVABLE} 或 {@link HintEngine#UNKNOWN}，在主线程回调；
+     * 计算期间局面发生变化（包括加载其他关卡）时中止搜索并丢弃结果
+     */
+    public void requestHint(HintListener hintListener) {
+        if (graph == null || !isEnabled()) return;
+        if (hintEngine == null) {
+            hintEngine = new HintEngine(graph);
+        }
+        HintEngine engine = hintEngine;
+        int version = stateVersion;
+        int last = state.lastPoint();
+        int[] reachCount = state.copyReachCount();
+        int energy = state.getEnergy();
+        int depth = state.getDepth();
+        hintExecutor.execute(() -> {
+            int hint = engine.hint(last, reachCount, energy, depth, HINT_NODE_LIMIT, () -> version != stateVersion);
+            post(() -> {
+                if (version != stateVersion || engine != hintEngine) return;
+                hintPoint = hint >= 0 ? hint : -1;
+                invalidate();
+                hintListener.onHint(hint);
+            });
+        });
+    }
+
+    /**
+     * 当前路线是否已确定无法完成
+     */
+    public boolean isStuck() {
+        return state != null && state.isStuck();
+    }
+
     public void setOnFinishListener(GameListener listener) {
         this.listener = listener;
     }
@@ -153,84 +319,65 @@ public class GameView extends View {
     @Override
     protected void onDraw(Canvas canvas) {
         super.onDraw(canvas);
+        long drawStart = Hamiltonian.METRICS ? System.nanoTime() : 0;
         Graph graph = this.graph;
-        if (graph != null) {
-            float widgetWidth = getWidth();
-            float widgetHeight = getHeight();
-            float radius = Math.min(widgetWidth, widgetHeight) / 20;
-            float lineWidth = radius / 2;
-            paint.setTextSize(radius * 1.2F);
-            float textOffsetY = (paint.descent() - paint.ascent()) / 4;
-
+        BoardGeometry geometry = this.geometry;
+        if (graph != null && geometry != null && boardRenderer != null) {
+            updateBoardState(geometry);
+        } else if (graph != null && geometry != null) {
+            float radius = geometry.radius;
+            float lineWidth = geometry.lineWidth;
             List<Graph.Point> pointList = graph.pointList;
-            List<Graph.Edge> edgeList = graph.edgeList;
-
-            // 绘制线
-            for (int i = 0; i < edgeList.size(); i++) {
-                if (useRoadCount[i] > 0) {
-                    paint.setColor(0xff00ff99);
+            int last = state.lastPoint();
+
+            // 绘制线，按是否走过分成两批
+            int usedLineCount = 0, unusedLineCount = 0;
+            int usedArrowCount = 0, unusedArrowCount = 0;
+            for (int i = 0; i < geometry.edgeCount; i++) {
+                boolean used = state.isEdgeUsed(i);
+                if (used) {
+                    System.arraycopy(geometry.edgeLines, i * 4, usedLines, usedLineCount, 4);
+                    usedLineCount += 4;
                 } else {
-                    paint.setColor(0xffdddddd);
+                    System.arraycopy(geometry.edgeLines, i * 4, unusedLines, unusedLineCount, 4);
+                    unusedLineCount += 4;
                 }
-                paint.setStrokeWidth(lineWidth);
-                Graph.Edge edge = edgeList.get(i);
-                Graph.Point pointA = pointList.get(edge.pointA);
-                Graph.Point pointB = pointList.get(edge.pointB);
-
-                float ax = widgetWidth * pointA.x / 0x7fffffff;
-                float ay = widgetHeight * pointA.y / 0x7fffffff;
-                float bx = widgetWidth * pointB.x / 0x7fffffff;
-                float by = widgetHeight * pointB.y / 0x7fffffff;
-                canvas.drawLine(ax, ay, bx, by, paint);
-                if (edge.direct != Graph.Edge.Direct.None) {
-                    float cx = (ax + bx) / 2;
-                    float cy = (ay + by) / 2;
-                    float length = lineWidth * 2;
-                    final float angle = 0.5F;
-                    paint.setStrokeWidth(lineWidth * 0.5f);
-                    double angle1 = Math.atan2(ay - by, ax - bx);
-                    double angle2 = Math.atan2(ax - bx, ay - by);
-                    if (edge.direct == Graph.Edge.Direct.A2B) {
-                        double a = angle1 - angle - Math.PI;
-                        double b = angle2 - angle - Math.PI;
-                        float x1 = (float) (cx - length * Math.cos(a));
-                        float y1 = (float) (cy - length * Math.sin(a));
-                        float x2 = (float) (cx - length * Math.sin(b));
-                        float y2 = (float) (cy - length * Math.cos(b));
-                        canvas.drawLine(cx, cy, x1, y1, paint);
-                        canvas.drawLine(cx, cy, x2, y2, paint);
+                if (geometry.hasArrow[i]) {
+                    if (used) {
+                        System.arraycopy(geometry.arrowLines, i * 8, usedArrows, usedArrowCount, 8);
+                        usedArrowCount += 8;
                     } else {
-                        double a = angle1 - angle;
-                        double b = angle2 - angle;
-                        float x1 = (float) (cx - length * Math.cos(a));
-                        float y1 = (float) (cy - length * Math.sin(a));
-                        float x2 = (float) (cx - length * Math.sin(b));
-                        float y2 = (float) (cy - length * Math.cos(b));
-                        canvas.drawLine(cx, cy, x1, y1, paint);
-                        canvas.drawLine(cx, cy, x2, y2, paint);
+                        System.arraycopy(geometry.arrowLines, i * 8, unusedArrows, unusedArrowCount, 8);
+                        unusedArrowCount += 8;
                     }
                 }
             }
-
-            if (pressed && !road.isEmpty()) {
-                Graph.Point lastPoint = graph.pointList.get(road.getLast());
+            paint.setStrokeWidth(lineWidth);
+            paint.setColor(0xffdddddd);
+            canvas.drawLines(unusedLines, 0, unusedLineCount, paint);
+            paint.setColor(0xff00ff99);
+            canvas.drawLines(usedLines, 0, usedLineCount, paint);
+            paint.setStrokeWidth(lineWidth * 0.5f);
+            paint.setColor(0xffdddddd);
+            canvas.drawLines(unusedArrows, 0, unusedArrowCount, paint);
+            paint.setColor(0xff00ff99);
+            canvas.drawLines(usedArrows, 0, usedArrowCount, paint);
+
+            if (pressed && last != -1) {
                 paint.setColor(0xff00ff99);
-                float ax = widgetWidth * lastPoint.x / 0x7fffffff;
-                float ay = widgetHeight * lastPoint.y / 0x7fffffff;
-                float bx = pressX;
-                float by = pressY;
-                canvas.drawLine(ax, ay, bx, by, paint);
+                paint.setStrokeWidth(lineWidth);
+                canvas.drawLine(geometry.pointX[last], geometry.pointY[last], pressX, pressY, paint);
             }
 
             // 绘制点
-            for (int i = 0; i < pointList.size(); i++) {
+            for (int i = 0; i < geometry.pointCount; i++) {
                 Graph.Point point = pointList.get(i);
-                float x = widgetWidth * point.x / 0x7fffffff;
-                float y = widgetHeight * point.y / 0x7fffffff;
+                float x = geometry.pointX[i];
+                float y = geometry.pointY[i];
 
-                if (!road.isEmpty() && road.getLast() == i) {
-                    paint.setColor(0xff000000);
-                    float r = radius * 1.1F;
+                if (hintPoint == i) {
+                    paint.setColor(0xffffcc00);
+                    float r = radius * 1.3F;
                     if (point.isTwice) {
                         canvas.drawRect(x - r, y - r, x + r, y + r, paint);
                     } else {
@@ -238,17 +385,17 @@ public class GameView extends View {
                     }
                 }
 
-                int color;
-                if (pointReachCount[i] == 0 && (road.size() > 1 || !point.isStart)) {
-                    color = 0xff33ff00;
-                } else if (point.isStart && road.size() == 1) {
-                    color = 0xff00ffff;
-                } else if (point.isEnd) {
-                    color = 0xffff6600;
-                } else {
-                    color = 0xffff99ff;
+                if (last == i) {
+                    paint.setColor(state.isStuck() ? 0xffff0000 : 0xff000000);
+                    float r = radius * 1.1F;
+                    if (point.isTwice) {
+                        canvas.drawRect(x - r, y - r, x + r, y + r, paint);
+                    } else {
+                        canvas.drawCircle(x, y, r, paint);
+                    }
                 }
-                paint.setColor(color);
+
+                paint.setColor(pointColor(point));
 
                 if (point.isTwice) {
                     canvas.drawRect(x - radius, y - radius, x + radius, y + radius, paint);
@@ -256,12 +403,67 @@ public class GameView extends View {
                     canvas.drawCircle(x, y, radius, paint);
                 }
 
-                if (point.energy != 0) {
+                if (geometry.labels[i] != null) {
                     paint.setColor(Color.BLACK);
-                    canvas.drawText(String.valueOf(point.energy), x, y + textOffsetY, paint);
+                    canvas.drawText(geometry.labels[i], x, y + textOffsetY, paint);
                 }
             }
         }
+        if (Hamiltonian.METRICS) {
+            long now = System.nanoTime();
+            Metrics.DRAW.record(now - drawStart);
+            if (touchTime != 0) {
+                Metrics.TOUCH_TO_DRAW.record(now - touchTime);
+                touchTime = 0;
+            }
+            drawMetrics(canvas);
+        }
+    }
+
+    // 左上角的统计信息，不计入绘制耗时
+    private void drawMetrics(Canvas canvas) {
+        float textSize = paint.getTextSize();
+        float lineHeight = getResources().getDisplayMetrics().scaledDensity * 12;
+        paint.setTextSize(lineHeight);
+        paint.setTextAlign(Paint.Align.LEFT);
+        paint.setColor(Color.GRAY);
+        long now = System.nanoTime();
+        if (metricsLines == null || now - metricsTime >= METRICS_REFRESH_INTERVAL) {
+            metricsLines = Metrics.summary();
+            metricsTime = now;
+        }
+        float y = lineHeight;
+        for (String line : metricsLines) {
+            canvas.drawText(line, 0, y, paint);
+            y += lineHeight;
+        }
+        paint.setTextAlign(Paint.Align.CENTER);
+        paint.setTextSize(textSize);
+    }
+
+    private void updateBoardState(BoardGeometry geometry) {
+        List<Graph.Point> pointList = graph.pointList;
+        for (int i = 0; i < geometry.edgeCount; i++) {
+            edgeColors[i] = state.isEdgeUsed(i) ? 0xff00ff99 : 0xffdddddd;
+        }
+        for (int i = 0; i < geometry.pointCount; i++) {
+            pointColors[i] = pointColor(pointList.get(i));
+        }
+        boardRenderer.setBoardState(edgeColors, pointColors, hintPoint, 0xffffcc00,
+                state.lastPoint(), state.isStuck() ? 0xffff0000 : 0xff000000, pressed, pressX, pressY);
+    }
+
+    private int pointColor(Graph.Point point) {
+        int roadLength = state.getRoadLength();
+        if (state.getReachCount(point.index) == 0 && (roadLength > 1 || !point.isStart)) {
+            return 0xff33ff00;
+        } else if (point.isStart && roadLength == 1) {
+            return 0xff00ffff;
+        } else if (point.isEnd) {
+            return 0xffff6600;
+        } else {
+            return 0xffff99ff;
+        }
     }
 
     @SuppressLint("ClickableViewAccessibility")
@@ -271,6 +473,9 @@ public class GameView extends View {
             pressed = false;
             return false;
         }
+        if (Hamiltonian.METRICS && touchTime == 0) {
+            touchTime = System.nanoTime();
+        }
         pressX = event.getX();
         pressY = event.getY();
         int action = event.getAction();
@@ -288,65 +493,67 @@ public class GameView extends View {
     }
 
     private void gotoPoint(int index) {
-        int oldEnergy = energy;
-        if (road.isEmpty()) {
-            if (pointEnergyRequire[index] >= 0 && (depth == 1 || pointReachCount[index] > 1 || index != end)) {
-                gotoPointImpl(index);
-            }
-        } else {
-            int from = road.getLast();
-            if (edgeAccess[from][index] && pointReachCount[index] > 0 && (depth == 1 || index != end) && energy + pointEnergyRequire[index] >= 0) {
-                gotoPointImpl(index);
-            }
+        int oldEnergy = state.getEnergy();
+        if (state.canMove(index)) {
+            gotoPointImpl(index);
         }
-        if (oldEnergy != energy) {
+        if (oldEnergy != state.getEnergy()) {
             onEnergyChange();
         }
     }
 
     private void gotoPointImpl(int index) {
-        if (!road.isEmpty()) {
-            int from = road.getLast();
-            int to = index;
-            if (from > to) {
-                to = from;
-                from = index;
-            }
-            for (int i = 0; i < graph.edgeList.size(); i++) {
-                Graph.Edge edge = graph.edgeList.get(i);
-                if (edge.pointA == from && edge.pointB == to) {
-                    useRoadCount[i]++;
-                    break;
-                }
-            }
-        }
-        road.add(index);
-        pointReachCount[index]--;
-        depth--;
-        energy += pointEnergyRequire[index];
-        if (depth == 0) {
+        state.tryMove(index);
+        onStateChanged();
+        if (state.isFinished()) {
             onFinish();
         }
     }
 
-    private int getTouchPoint() {
-        float x = pressX, y = pressY;
-        float widgetWidth = getWidth();
-        float widgetHeight = getHeight();
-        float radius = Math.min(widgetWidth, widgetHeight) / 20;
-        float r2 = radius * radius;
+    // 路线变化后之前的提示失效
+    private void onStateChanged() {
+        stateVersion++;
+        hintPoint = -1;
+    }
 
-        List<Graph.Point> pointList = graph.pointList;
-        for (int i = 0; i < pointList.size(); i++) {
-            Graph.Point point = pointList.get(i);
-            float px = widgetWidth * point.x / 0x7fffffff;
-            float py = widgetHeight * point.y / 0x7fffffff;
+    /**
+     * 当前已走的路线
+     */
+    public int[] getRoad() {
+        return state == null ? new int[0] : state.getRoad();
+    }
 
-            float dx = x - px, dy = y - py;
-            float distance2 = dx * dx + dy * dy;
-            if (distance2 < r2) return i;
+    /**
+     * 是否已加载关卡且路线走到一半；有起点的关卡加载时自动站在起点上，不算开始
+     */
+    public boolean isInProgress() {
+        return graph != null && loadTask == null && state.getRoadLength() > (start != -1 ? 1 : 0) && !state.isFinished();
+    }
+
+    /**
+     * 恢复保存的路线，见 {@link GameState#restore}
+     */
+    public void restoreRoad(int[] path) {
+        if (graph == null) return;
+        int oldEnergy = state.getEnergy();
+        state.restore(path);
+        if (state.getRoadLength() == 0 && start != -1) {
+            state.tryMove(start);
         }
-        return -1;
+        onStateChanged();
+        if (oldEnergy != state.getEnergy()) {
+            onEnergyChange();
+        }
+        postInvalidate();
+        if (state.isFinished()) {
+            onFinish();
+        }
+    }
+
+    private int getTouchPoint() {
+        TouchGrid touchGrid = this.touchGrid;
+        if (touchGrid == null) return -1;
+        return touchGrid.find(pressX, pressY);
     }
 
     private void onFinish() {
@@ -358,7 +565,7 @@ public class GameView extends View {
 
     private void onEnergyChange() {
         if (listener != null) {
-            listener.onEnergyChange(energy);
+            listener.onEnergyChange(state.getEnergy());
         }
     }
 
@@ -367,4 +574,18 @@ public class GameView extends View {
 
         void onFinish();
     }
+
+    public interface LevelLoader {
+        Level load() throws IOException;
+    }
+
+    public interface LoadListener {
+        void onLoaded();
+
+        void onLoadFailed(Exception e);
+    }
+
+    public interface HintListener {
+        void onHint(int point);
+    }
 }
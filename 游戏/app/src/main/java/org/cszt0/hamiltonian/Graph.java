@@ -1,73 +1,270 @@
 package org.cszt0.hamiltonian;
 
-import java.io.DataInputStream;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
+/**
+ * 关卡文件均为小端序，有两个版本：
+ * <p>
+ * v1（关卡编辑器生成）：点数 u8、边数 u8；每个点 x i32、y i32、能量 i8、标志 u8；每条边 a u8、b u8、方向 u8
+ * <p>
+ * v2：魔数 0x89 'H' 'M' 'L'、版本 u16、标志 u16（bit0 为有附加信息）、点数 i32、边数 i32；
+ * 每个点 x i32、y i32、能量 i16、标志 u8；每条边 a i32、b i32、方向 u8；
+ * 附加信息为条数 i32，每条为键、值两个字符串（长度 u16 + UTF-8）
+ * <p>
+ * 点的标志：bit2 起点、bit1 终点、bit0 需要路过两次；边的方向：0 无方向、1 A 到 B、2 B 到 A
+ */
 public class Graph {
 
+    public static final int VERSION_1 = 1;
+    public static final int VERSION_2 = 2;
+
+    // 文件开头的 0x89 'H' 'M' 'L'，按小端序读出的值
+    private static final int MAGIC = 0x4c4d4889;
+    private static final int FLAG_METADATA = 1;
+    private static final Edge.Direct[] DIRECTS = Edge.Direct.values();
+
     public final List<Point> pointList;
     public final List<Edge> edgeList;
+    // 关卡的附加信息（如作者、名称），只在 v2 中保存
+    public final Map<String, String> metadata;
 
     public Graph() {
-        pointList = new ArrayList<>();
-        edgeList = new ArrayList<>();
+        this(0, 0);
+    }
+
+    private Graph(int pointCount, int edgeCount) {
+        pointList = new ArrayList<>(pointCount);
+        edgeList = new ArrayList<>(edgeCount);
+        metadata = new LinkedHashMap<>();
     }
 
+    /**
+     * 一次读入整个流后解析，可以是 v1 或 v2
+     */
     public static Graph readFromStream(InputStream inputStream) throws IOException {
-        DataInputStream dataInputStream = new DataInputStream(inputStream);
-        byte[] buf = new byte[2];
-        dataInputStream.readFully(buf);
-        int pointCount = buf[0];
-        int edgeCount = buf[1];
-        Graph graph = new Graph();
+        byte[] data = new byte[Math.max(inputStream.available(), 256)];
+        int length = 0;
+        int read;
+        while ((read = inputStream.read(data, length, data.length - length)) != -1) {
+            length += read;
+            if (length == data.length) {
+                data = Arrays.copyOf(data, data.length * 2);
+            }
+        }
+        return readFromBuffer(ByteBuffer.wrap(data, 0, length));
+    }
+
+    /**
+     * 解析 buffer 中 position 到 limit 之间的内容，不改变 buffer 的 position 与字节序
+     */
+    public static Graph readFromBuffer(ByteBuffer buffer) throws IOException {
+        ByteBuffer data = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        try {
+            if (data.remaining() >= 4 && data.getInt(data.position()) == MAGIC) {
+                data.getInt();
+                return readVersion2(data);
+            }
+            return readVersion1(data);
+        } catch (BufferUnderflowException e) {
+            throw new EOFException("关卡文件不完整");
+        }
+    }
+
+    private static Graph readVersion1(ByteBuffer data) throws IOException {
+        int pointCount = data.get() & 0xff;
+        int edgeCount = data.get() & 0xff;
+        Graph graph = new Graph(pointCount, edgeCount);
         for (int i = 0; i < pointCount; i++) {
             Point point = new Point();
             point.index = i;
-            point.x = readInt(dataInputStream);
-            point.y = readInt(dataInputStream);
-            dataInputStream.readFully(buf);
-            point.energy = buf[0];
-            point.isStart = (((buf[1] >> 2) & 1) == 1);
-            point.isEnd = (((buf[1] >> 1) & 1) == 1);
-            point.isTwice = ((buf[1] & 1) == 1);
+            point.x = data.getInt();
+            point.y = data.getInt();
+            point.energy = data.get();
+            setFlags(point, data.get());
             graph.pointList.add(point);
         }
-        buf = new byte[3];
         for (int i = 0; i < edgeCount; i++) {
-            Edge edge = new Edge();
-            dataInputStream.readFully(buf);
-            edge.pointA = buf[0];
-            edge.pointB = buf[1];
-            switch (buf[2]) {
-                case 0:
-                    edge.direct = Edge.Direct.None;
-                    break;
-                case 1:
-                    edge.direct = Edge.Direct.A2B;
-                    break;
-                case 2:
-                    edge.direct = Edge.Direct.B2A;
-                    break;
+            graph.edgeList.add(readEdge(data.get() & 0xff, data.get() & 0xff, data.get(), pointCount));
+        }
+        return graph;
+    }
+
+    private static Graph readVersion2(ByteBuffer data) throws IOException {
+        int version = data.getShort() & 0xffff;
+        if (version != VERSION_2) {
+            throw new IOException("不支持的关卡版本：" + version);
+        }
+        int flags = data.getShort() & 0xffff;
+        int pointCount = data.getInt();
+        int edgeCount = data.getInt();
+        // 先按最小的记录长度检查，避免错误的数量导致过大的分配
+        if (pointCount < 0 || edgeCount < 0 || (long) pointCount * 11 + (long) edgeCount * 9 > data.remaining()) {
+            throw new EOFException("关卡文件不完整");
+        }
+        Graph graph = new Graph(pointCount, edgeCount);
+        for (int i = 0; i < pointCount; i++) {
+            Point point = new Point();
+            point.index = i;
+            point.x = data.getInt();
+            point.y = data.getInt();
+            point.energy = data.getShort();
+            setFlags(point, data.get());
+            graph.pointList.add(point);
+        }
+        for (int i = 0; i < edgeCount; i++) {
+            graph.edgeList.add(readEdge(data.getInt(), data.getInt(), data.get(), pointCount));
+        }
+        if ((flags & FLAG_METADATA) != 0) {
+            int count = data.getInt();
+            for (int i = 0; i < count; i++) {
+                String key = readString(data);
+                graph.metadata.put(key, readString(data));
             }
-            graph.edgeList.add(edge);
         }
         return graph;
     }
 
-    private static int readInt(DataInputStream inputStream) throws IOException {
-        byte[] buf = new byte[4];
-        inputStream.readFully(buf);
-        int result = 0;
-        result |= buf[0] & 0xff;
-        result |= (buf[1] & 0xff) << 8;
-        result |= (buf[2] & 0xff) << 16;
-        result |= (buf[3] & 0xff) << 24;
+    private static void setFlags(Point point, byte flag) {
+        point.isStart = ((flag >> 2) & 1) == 1;
+        point.isEnd = ((flag >> 1) & 1) == 1;
+        point.isTwice = (flag & 1) == 1;
+    }
+
+    private static Edge readEdge(int pointA, int pointB, byte direct, int pointCount) throws IOException {
+        if (pointA >= pointCount || pointB >= pointCount || pointA < 0 || pointB < 0) {
+            throw new IOException("边的端点不存在：" + pointA + ", " + pointB);
+        }
+        if (direct < 0 || direct >= DIRECTS.length) {
+            throw new IOException("未知的边方向：" + direct);
+        }
+        Edge edge = new Edge();
+        edge.pointA = pointA;
+        edge.pointB = pointB;
+        edge.direct = DIRECTS[direct];
+        return edge;
+    }
+
+    private static String readString(ByteBuffer data) {
+        int length = data.getShort() & 0xffff;
+        if (length > data.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        String result;
+        if (data.hasArray()) {
+            result = new String(data.array(), data.arrayOffset() + data.position(), length, StandardCharsets.UTF_8);
+            data.position(data.position() + length);
+        } else {
+            byte[] bytes = new byte[length];
+            data.get(bytes);
+            result = new String(bytes, StandardCharsets.UTF_8);
+        }
         return result;
     }
 
+    /**
+     * 按指定版本写出；v1 要求点数与边数不超过 255、能量在 byte 范围内，且不保存附加信息
+     */
+    public void writeToStream(OutputStream outputStream, int version) throws IOException {
+        ByteBuffer data;
+        if (version == VERSION_1) {
+            data = writeVersion1();
+        } else if (version == VERSION_2) {
+            data = writeVersion2();
+        } else {
+            throw new IllegalArgumentException("不支持的关卡版本：" + version);
+        }
+        outputStream.write(data.array(), 0, data.position());
+    }
+
+    private ByteBuffer writeVersion1() {
+        int pointCount = pointList.size();
+        int edgeCount = edgeList.size();
+        if (pointCount > 255 || edgeCount > 255) {
+            throw new IllegalStateException("v1 最多支持 255 个点与 255 条边");
+        }
+        ByteBuffer data = ByteBuffer.allocate(2 + pointCount * 10 + edgeCount * 3).order(ByteOrder.LITTLE_ENDIAN);
+        data.put((byte) pointCount);
+        data.put((byte) edgeCount);
+        for (Point point : pointList) {
+            if (point.energy < Byte.MIN_VALUE || point.energy > Byte.MAX_VALUE) {
+                throw new IllegalStateException("v1 中能量必须在 -128 到 127 之间");
+            }
+            data.putInt(point.x);
+            data.putInt(point.y);
+            data.put((byte) point.energy);
+            data.put(flags(point));
+        }
+        for (Edge edge : edgeList) {
+            data.put((byte) edge.pointA);
+            data.put((byte) edge.pointB);
+            data.put((byte) edge.direct.ordinal());
+        }
+        return data;
+    }
+
+    private ByteBuffer writeVersion2() {
+        int size = 4 + 2 + 2 + 4 + 4 + pointList.size() * 11 + edgeList.size() * 9;
+        byte[][] strings = new byte[metadata.size() * 2][];
+        if (!metadata.isEmpty()) {
+            size += 4;
+            int i = 0;
+            for (Map.Entry<String, String> entry : metadata.entrySet()) {
+                strings[i++] = entry.getKey().getBytes(StandardCharsets.UTF_8);
+                strings[i++] = entry.getValue().getBytes(StandardCharsets.UTF_8);
+            }
+            for (byte[] string : strings) {
+                if (string.length > 0xffff) {
+                    throw new IllegalStateException("附加信息过长");
+                }
+                size += 2 + string.length;
+            }
+        }
+        ByteBuffer data = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+        data.putInt(MAGIC);
+        data.putShort((short) VERSION_2);
+        data.putShort((short) (metadata.isEmpty() ? 0 : FLAG_METADATA));
+        data.putInt(pointList.size());
+        data.putInt(edgeList.size());
+        for (Point point : pointList) {
+            if (point.energy < Short.MIN_VALUE || point.energy > Short.MAX_VALUE) {
+                throw new IllegalStateException("能量必须在 short 范围内");
+            }
+            data.putInt(point.x);
+            data.putInt(point.y);
+            data.putShort((short) point.energy);
+            data.put(flags(point));
+        }
+        for (Edge edge : edgeList) {
+            data.putInt(edge.pointA);
+            data.putInt(edge.pointB);
+            data.put((byte) edge.direct.ordinal());
+        }
+        if (!metadata.isEmpty()) {
+            data.putInt(metadata.size());
+            for (byte[] string : strings) {
+                data.putShort((short) string.length);
+                data.put(string);
+            }
+        }
+        return data;
+    }
+
+    private static byte flags(Point point) {
+        return (byte) ((point.isStart ? 4 : 0) | (point.isEnd ? 2 : 0) | (point.isTwice ? 1 : 0));
+    }
+
     public static class Point {
         public int index;
         public int x, y;
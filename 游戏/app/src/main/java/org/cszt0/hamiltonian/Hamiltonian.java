@@ -4,4 +4,8 @@ import android.app.Application;
 
 public class Hamiltonian extends Application {
     public static final boolean SNAPSHOT = true;
+    // 由 NativeRenderer 绘制棋盘，GameView 只负责触摸与状态
+    public static final boolean NATIVE_BOARD = false;
+    // 记录绘制、触摸延迟与加载耗时，见 Metrics
+    public static final boolean METRICS = false;
 }
@@ -0,0 +1,163 @@
+package org.cszt0.hamiltonian;
+
+import java.util.Random;
+
+public class HintEngine {
+
+    public static final int UNSOLVABLE = -1;
+    // 超过搜索上限或被取消，不知道能否完成
+    public static final int UNKNOWN = -2;
+
+    // 置换表大小（条目数），必须为 2 的幂
+    private static final int TABLE_SIZE = 1 << 16;
+    // 每搜索这么多个局面检查一次是否取消，必须为 2 的幂
+    private static final int CANCEL_CHECK_INTERVAL = 1 << 12;
+
+    private final Solver solver;
+    // Zobrist 键：最后到达的点（下标 size 表示尚未出发）、每个点的剩余路过次数（0~2）
+    private final long[] lastKeys;
+    private final long[] countKeys;
+    // 已确认无解的状态，直接映射，冲突时覆盖
+    private final long[] deadStates;
+    // 本次搜索的局面数与上限；中止后不再写入 deadStates，避免把没搜完的局面记为无解
+    private long nodes;
+    private long nodeLimit;
+    private Cancellation cancellation;
+    private boolean aborted;
+
+    public HintEngine(Graph graph) {
+        solver = new Solver(graph);
+        int size = solver.size;
+        Random random = new Random(0x6861_6d69_6c74_6f6eL);
+        lastKeys = new long[size + 1];
+        for (int i = 0; i <= size; i++) {
+            lastKeys[i] = random.nextLong();
+        }
+        countKeys = new long[size * 3];
+        for (int i = 0; i < countKeys.length; i++) {
+            countKeys[i] = random.nextLong();
+        }
+        deadStates = new long[TABLE_SIZE];
+    }
+
+    /**
+     * 不限搜索的局面数，见 {@link #hint(int, int[], int, int, long, Cancellation)}
+     */
+    public int hint(int last, int[] pointReachCount, int energy, int depth) {
+        return hint(last, pointReachCount, energy, depth, Long.MAX_VALUE, null);
+    }
+
+    /**
+     * 根据当前局面给出下一步可走且仍能完成的点；无法完成时返回 {@link #UNSOLVABLE}，
+     * 搜索超过 nodeLimit 个局面或 cancellation 返回 true 时返回 {@link #UNKNOWN}
+     *
+     * @param last            最后到达的点，尚未出发时为 -1
+     * @param pointReachCount 每个点剩余的路过次数
+     * @param cancellation    可以为 null
+     */
+    public synchronized int hint(int last, int[] pointReachCount, int energy, int depth, long nodeLimit, Cancellation cancellation) {
+        this.nodes = 0;
+        this.nodeLimit = nodeLimit;
+        this.cancellation = cancellation;
+        this.aborted = false;
+        try {
+            int hint = search(last, pointReachCount, energy, depth);
+            // 找到的点总是可以完成的，即使之后的分支被中止
+            return hint == UNSOLVABLE && aborted ? UNKNOWN : hint;
+        } finally {
+            this.cancellation = null;
+        }
+    }
+
+    private int search(int last, int[] pointReachCount, int energy, int depth) {
+        if (depth == 0) {
+            return UNSOLVABLE;
+        }
+        Solver.State state = new Solver.State(solver, pointReachCount);
+        long hash = lastKeys[last == -1 ? solver.size : last] ^ energyKey(energy);
+        for (int i = 0; i < solver.size; i++) {
+            hash ^= countKeys[i * 3 + pointReachCount[i]];
+        }
+        if (last == -1) {
+            for (int i = 0; i < solver.size; i++) {
+                if (solver.start != -1 ? i != solver.start : !solver.canStartAt(i)) continue;
+                if (pointReachCount[i] == 0) continue;
+                if (tryMove(state, -1, i, energy, depth, hash)) {
+                    return i;
+                }
+            }
+            return UNSOLVABLE;
+        }
+        int row = last * solver.words;
+        for (int w = 0; w < solver.words; w++) {
+            long candidates = solver.candidates(state.once, row, w, depth);
+            while (candidates != 0) {
+                long bit = candidates & -candidates;
+                candidates ^= bit;
+                int next = (w << 6) | Long.numberOfTrailingZeros(bit);
+                if (tryMove(state, last, next, energy, depth, hash)) {
+                    return next;
+                }
+            }
+        }
+        return UNSOLVABLE;
+    }
+
+    private boolean solvable(Solver.State state, int last, int energy, int depth, long hash) {
+        if (depth == 0) {
+            return true;
+        }
+        if (aborted || ++nodes > nodeLimit
+                || ((nodes & (CANCEL_CHECK_INTERVAL - 1)) == 0 && cancellation != null && cancellation.isCancelled())) {
+            aborted = true;
+            return false;
+        }
+        int slot = (int) hash & (TABLE_SIZE - 1);
+        if (deadStates[slot] == hash) {
+            return false;
+        }
+        int row = last * solver.words;
+        for (int w = 0; w < solver.words; w++) {
+            long candidates = solver.candidates(state.once, row, w, depth);
+            while (candidates != 0) {
+                long bit = candidates & -candidates;
+                candidates ^= bit;
+                int next = (w << 6) | Long.numberOfTrailingZeros(bit);
+                if (tryMove(state, last, next, energy, depth, hash)) {
+                    return true;
+                }
+            }
+        }
+        if (!aborted) {
+            deadStates[slot] = hash;
+        }
+        return false;
+    }
+
+    private boolean tryMove(Solver.State state, int last, int next, int energy, int depth, long hash) {
+        int nextEnergy = energy + solver.energyRequire[next];
+        if (nextEnergy < 0 && last != -1) {
+            return false;
+        }
+        int count = state.count(next);
+        long nextHash = hash
+                ^ lastKeys[last == -1 ? solver.size : last] ^ lastKeys[next]
+                ^ countKeys[next * 3 + count] ^ countKeys[next * 3 + count - 1]
+                ^ energyKey(energy) ^ energyKey(nextEnergy);
+        boolean twice = state.take(next);
+        boolean solvable = solvable(state, next, nextEnergy, depth - 1, nextHash);
+        state.restore(next, twice);
+        return solvable;
+    }
+
+    private static long energyKey(int energy) {
+        long z = energy * 0x9e3779b97f4a7c15L;
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    public interface Cancellation {
+        boolean isCancelled();
+    }
+}
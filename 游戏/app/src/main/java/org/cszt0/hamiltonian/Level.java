@@ -0,0 +1,37 @@
+package org.cszt0.hamiltonian;
+
+/**
+ * 解析后的关卡与加载时一次性计算的数据，创建后不再修改，可以在线程间共享
+ */
+public class Level {
+
+    // 不要修改其中的点与边
+    final Graph graph;
+    final Adjacency adjacency;
+    final int start;
+    final int end;
+    // 走完需要的总步数
+    final int depth;
+    // 每个点的初始路过次数，使用时需要复制
+    final int[] pointReachCount;
+    final int[] pointEnergyRequire;
+
+    public Level(Graph graph) {
+        this.graph = graph;
+        int size = graph.pointList.size();
+        int start = -1, end = -1, depth = 0;
+        pointReachCount = new int[size];
+        pointEnergyRequire = new int[size];
+        for (Graph.Point point : graph.pointList) {
+            if (point.isStart) start = point.index;
+            if (point.isEnd) end = point.index;
+            depth += point.isTwice ? 2 : 1;
+            pointReachCount[point.index] = point.isTwice ? 2 : 1;
+            pointEnergyRequire[point.index] = point.energy;
+        }
+        this.start = start;
+        this.end = end;
+        this.depth = depth;
+        adjacency = new Adjacency(graph);
+    }
+}
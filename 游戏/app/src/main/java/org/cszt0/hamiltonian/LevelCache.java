@@ -0,0 +1,102 @@
+package org.cszt0.hamiltonian;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+
+/**
+ * 从关卡包中读取关卡，按最近使用保留固定数量的解析结果，并可以在后台提前加载
+ */
+public class LevelCache {
+
+    private static final int CAPACITY = 16;
+
+    private final LevelPack levelPack;
+    private final Executor executor;
+    // 键为 chapter * 1000 + checkpoint；值可能仍在后台加载中
+    private final Map<Integer, FutureTask<Level>> levels = new LinkedHashMap<Integer, FutureTask<Level>>(CAPACITY, 0.75F, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, FutureTask<Level>> eldest) {
+            return size() > CAPACITY;
+        }
+    };
+
+    public LevelCache(LevelPack levelPack, Executor executor) {
+        this.levelPack = levelPack;
+        this.executor = executor;
+    }
+
+    public LevelPack getLevelPack() {
+        return levelPack;
+    }
+
+    /**
+     * 返回关卡，未缓存时在当前线程加载；正在后台加载时等待其完成
+     */
+    public Level get(int chapter, int checkpoint) throws IOException {
+        FutureTask<Level> task;
+        boolean created;
+        synchronized (levels) {
+            int key = key(chapter, checkpoint);
+            task = levels.get(key);
+            created = task == null;
+            if (created) {
+                task = newTask(chapter, checkpoint);
+                levels.put(key, task);
+            }
+        }
+        if (created) {
+            task.run();
+        }
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        } catch (ExecutionException e) {
+            synchronized (levels) {
+                levels.remove(key(chapter, checkpoint));
+            }
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) throw (IOException) cause;
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            throw new IOException(cause);
+        }
+    }
+
+    /**
+     * 在后台加载关卡，已缓存或不存在时什么也不做
+     */
+    public void prefetch(int chapter, int checkpoint) {
+        if (levelPack.getLevel(chapter, checkpoint) == null) return;
+        FutureTask<Level> task;
+        synchronized (levels) {
+            int key = key(chapter, checkpoint);
+            if (levels.containsKey(key)) return;
+            task = newTask(chapter, checkpoint);
+            levels.put(key, task);
+        }
+        executor.execute(task);
+    }
+
+    /**
+     * 后台加载同一章中从 checkpoint 开始的若干关，数量不超过缓存容量的一半
+     */
+    public void prefetchChapter(int chapter, int checkpoint) {
+        int last = Math.min(levelPack.getCheckpointCount(chapter), checkpoint + CAPACITY / 2 - 1);
+        for (int i = checkpoint; i <= last; i++) {
+            prefetch(chapter, i);
+        }
+    }
+
+    private FutureTask<Level> newTask(int chapter, int checkpoint) {
+        return new FutureTask<>(() -> new Level(levelPack.readGraph(chapter, checkpoint)));
+    }
+
+    private static int key(int chapter, int checkpoint) {
+        return chapter * 1000 + checkpoint;
+    }
+}
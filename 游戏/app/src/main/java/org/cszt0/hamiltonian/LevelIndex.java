@@ -0,0 +1,141 @@
+package org.cszt0.hamiltonian;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * 构建时预先分析关卡得到的 levels.index，由 app/build.gradle 中的 indexLevels 任务（tools 中的 LevelIndexer）生成，小端序：
+ * <p>
+ * 魔数 'H' 'M' 'L' 'I'、版本 u16、每项长度 u16、关卡数 i32；之后按 (章节, 关卡) 升序，每项为
+ * 章节 i32、关卡 i32、解的个数 i64、搜索节点数 i64、平均分支数 f32、点数 u16、边数 u16、
+ * 有能量的点数 u16、正能量之和 u16、负能量之和的绝对值 u16、标志 u16
+ */
+public class LevelIndex {
+
+    public static final String ASSET_NAME = "levels.index";
+    // 搜索达到节点上限后停止，解的个数与节点数只是下限
+    public static final int FLAG_TRUNCATED = 1;
+
+    static final int MAGIC = 0x494c4d48;
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 12;
+    static final int ENTRY_SIZE = 40;
+
+    private final ByteBuffer data;
+    private final int count;
+    // 每章第一项的下标与关卡号，关卡号连续时可直接算出位置
+    private final int[] chapterFirstIndex;
+    private final int[] chapterFirstCheckpoint;
+
+    public LevelIndex(ByteBuffer buffer) throws IOException {
+        data = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        if (data.remaining() < HEADER_SIZE || data.getInt(0) != MAGIC) {
+            throw new IOException("不是关卡索引");
+        }
+        int version = data.getShort(4) & 0xffff;
+        if (version != VERSION || (data.getShort(6) & 0xffff) != ENTRY_SIZE) {
+            throw new IOException("不支持的关卡索引版本：" + version);
+        }
+        count = data.getInt(8);
+        if (count < 0 || HEADER_SIZE + (long) count * ENTRY_SIZE > data.limit()) {
+            throw new IOException("关卡索引不完整");
+        }
+        int maxChapter = -1;
+        for (int i = 0; i < count; i++) {
+            maxChapter = Math.max(maxChapter, chapter(i));
+        }
+        chapterFirstIndex = new int[maxChapter + 1];
+        chapterFirstCheckpoint = new int[maxChapter + 1];
+        for (int i = count - 1; i >= 0; i--) {
+            int chapter = chapter(i);
+            if (chapter < 0) {
+                throw new IOException("关卡索引中的章节错误：" + chapter);
+            }
+            chapterFirstIndex[chapter] = i;
+            chapterFirstCheckpoint[chapter] = checkpoint(i);
+        }
+    }
+
+    /**
+     * 映射文件中 [offset, offset + length) 的部分，映射建立后 channel 可以关闭
+     */
+    public static LevelIndex map(FileChannel channel, long offset, long length) throws IOException {
+        return new LevelIndex(channel.map(FileChannel.MapMode.READ_ONLY, offset, length));
+    }
+
+    /**
+     * 不存在时返回 null
+     */
+    public Entry get(int chapter, int checkpoint) {
+        if (chapter < 0 || chapter >= chapterFirstIndex.length) return null;
+        int index = chapterFirstIndex[chapter] + checkpoint - chapterFirstCheckpoint[chapter];
+        if (index < 0 || index >= count || chapter(index) != chapter || checkpoint(index) != checkpoint) {
+            index = find(chapter, checkpoint);
+            if (index == -1) return null;
+        }
+        return new Entry(data, HEADER_SIZE + index * ENTRY_SIZE);
+    }
+
+    // 关卡号不连续时二分查找
+    private int find(int chapter, int checkpoint) {
+        int low = 0, high = count - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int c = chapter(mid);
+            int p = checkpoint(mid);
+            if (c < chapter || (c == chapter && p < checkpoint)) {
+                low = mid + 1;
+            } else if (c == chapter && p == checkpoint) {
+                return mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return -1;
+    }
+
+    private int chapter(int index) {
+        return data.getInt(HEADER_SIZE + index * ENTRY_SIZE);
+    }
+
+    private int checkpoint(int index) {
+        return data.getInt(HEADER_SIZE + index * ENTRY_SIZE + 4);
+    }
+
+    public static class Entry {
+        public final long solutionCount;
+        // 带死路剪枝的完整搜索访问的局面数
+        public final long searchNodes;
+        // 搜索中每个可以继续走的局面平均有几种走法
+        public final float averageBranching;
+        public final int pointCount;
+        public final int edgeCount;
+        public final int energyPointCount;
+        public final int energyGain;
+        public final int energyCost;
+        public final int flags;
+
+        Entry(ByteBuffer data, int offset) {
+            solutionCount = data.getLong(offset + 8);
+            searchNodes = data.getLong(offset + 16);
+            averageBranching = data.getFloat(offset + 24);
+            pointCount = data.getShort(offset + 28) & 0xffff;
+            edgeCount = data.getShort(offset + 30) & 0xffff;
+            energyPointCount = data.getShort(offset + 32) & 0xffff;
+            energyGain = data.getShort(offset + 34) & 0xffff;
+            energyCost = data.getShort(offset + 36) & 0xffff;
+            flags = data.getShort(offset + 38) & 0xffff;
+        }
+
+        /**
+         * 难度 1 到 5，按每个解平均需要搜索的局面数，每多 4 倍加一级
+         */
+        public int getDifficulty() {
+            double perSolution = (double) searchNodes / Math.max(solutionCount, 1);
+            int difficulty = 1 + (int) (Math.log(Math.max(perSolution, 1)) / Math.log(4));
+            return Math.min(5, difficulty);
+        }
+    }
+}
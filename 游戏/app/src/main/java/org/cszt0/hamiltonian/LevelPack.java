@@ -0,0 +1,136 @@
+package org.cszt0.hamiltonian;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * 所有关卡打包成的 levels.pack，由 app/build.gradle 中的 packLevels 任务生成，小端序：
+ * <p>
+ * 魔数 'H' 'M' 'L' 'P'、版本 u16、保留 u16、关卡数 i32；
+ * 目录按 (章节, 关卡) 升序，每项为章节 i32、关卡 i32、偏移 i32、长度 i32、标志 i32；之后为各关卡文件的内容
+ * <p>
+ * 第 0 章第 0 关为 helloworld
+ */
+public class LevelPack {
+
+    public static final String ASSET_NAME = "levels.pack";
+    // 关卡文件为 v2 格式
+    public static final int FLAG_VERSION_2 = 1;
+
+    private static final int MAGIC = 0x504c4d48;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 12;
+    private static final int ENTRY_SIZE = 20;
+
+    private final ByteBuffer data;
+    private final int count;
+    private final int[] chapters;
+
+    public LevelPack(ByteBuffer buffer) throws IOException {
+        data = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        if (data.remaining() < HEADER_SIZE || data.getInt(0) != MAGIC) {
+            throw new IOException("不是关卡包");
+        }
+        int version = data.getShort(4) & 0xffff;
+        if (version != VERSION) {
+            throw new IOException("不支持的关卡包版本：" + version);
+        }
+        count = data.getInt(8);
+        if (count < 0 || HEADER_SIZE + (long) count * ENTRY_SIZE > data.limit()) {
+            throw new IOException("关卡包目录不完整");
+        }
+        for (int i = 0; i < count; i++) {
+            int offset = data.getInt(HEADER_SIZE + i * ENTRY_SIZE + 8);
+            int length = data.getInt(HEADER_SIZE + i * ENTRY_SIZE + 12);
+            if (offset < 0 || length < 0 || (long) offset + length > data.limit()) {
+                throw new IOException("关卡包不完整");
+            }
+        }
+        int chapterCount = 0;
+        for (int i = 0; i < count; i++) {
+            if (chapter(i) > 0 && (i == 0 || chapter(i) != chapter(i - 1))) chapterCount++;
+        }
+        chapters = new int[chapterCount];
+        chapterCount = 0;
+        for (int i = 0; i < count; i++) {
+            if (chapter(i) > 0 && (i == 0 || chapter(i) != chapter(i - 1))) chapters[chapterCount++] = chapter(i);
+        }
+    }
+
+    /**
+     * 映射文件中 [offset, offset + length) 的部分，映射建立后 channel 可以关闭
+     */
+    public static LevelPack map(FileChannel channel, long offset, long length) throws IOException {
+        return new LevelPack(channel.map(FileChannel.MapMode.READ_ONLY, offset, length));
+    }
+
+    /**
+     * 除第 0 章以外的所有章节，升序
+     */
+    public int[] getChapters() {
+        return chapters.clone();
+    }
+
+    public int getCheckpointCount(int chapter) {
+        int from = find(chapter, Integer.MIN_VALUE);
+        int to = find(chapter, Integer.MAX_VALUE);
+        return to - from;
+    }
+
+    /**
+     * 返回关卡文件内容（与关卡包共享数据），不存在时返回 null
+     */
+    public ByteBuffer getLevel(int chapter, int checkpoint) {
+        int index = find(chapter, checkpoint);
+        if (index == count || chapter(index) != chapter || checkpoint(index) != checkpoint) {
+            return null;
+        }
+        int entry = HEADER_SIZE + index * ENTRY_SIZE;
+        int offset = data.getInt(entry + 8);
+        int length = data.getInt(entry + 12);
+        ByteBuffer level = data.duplicate();
+        level.limit(offset + length).position(offset);
+        return level.slice();
+    }
+
+    public int getFlags(int chapter, int checkpoint) {
+        int index = find(chapter, checkpoint);
+        if (index == count || chapter(index) != chapter || checkpoint(index) != checkpoint) {
+            return 0;
+        }
+        return data.getInt(HEADER_SIZE + index * ENTRY_SIZE + 16);
+    }
+
+    public Graph readGraph(int chapter, int checkpoint) throws IOException {
+        ByteBuffer level = getLevel(chapter, checkpoint);
+        if (level == null) {
+            throw new IOException("关卡不存在：" + chapter + "-" + checkpoint);
+        }
+        return Graph.readFromBuffer(level);
+    }
+
+    // 第一个不小于 (chapter, checkpoint) 的目录项
+    private int find(int chapter, int checkpoint) {
+        int low = 0, high = count;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            int c = chapter(mid);
+            if (c < chapter || (c == chapter && checkpoint(mid) < checkpoint)) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private int chapter(int index) {
+        return data.getInt(HEADER_SIZE + index * ENTRY_SIZE);
+    }
+
+    private int checkpoint(int index) {
+        return data.getInt(HEADER_SIZE + index * ENTRY_SIZE + 4);
+    }
+}
@@ -2,9 +2,11 @@ package org.cszt0.hamiltonian;
 
 import android.content.Context;
 import android.content.SharedPreferences;
+import android.content.res.AssetFileDescriptor;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
 import android.graphics.PixelFormat;
@@ -21,6 +23,7 @@ import android.view.WindowManager;
 import android.widget.Button;
 import android.widget.ImageView;
 import android.widget.TextView;
+import android.widget.Toast;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
@@ -33,10 +36,18 @@ import androidx.recyclerview.widget.GridLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 import androidx.viewpager2.widget.ViewPager2;
 
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
-import java.util.ArrayList;
+import java.io.PrintWriter;
 import java.util.Arrays;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import online.cszt0.androidcommonutils.view.CommonRecyclerViewAdapter;
 import online.cszt0.androidcommonutils.view.ViewHolder;
@@ -52,8 +63,15 @@ public class MainActivity extends AppCompatActivity {
     private GLSurfaceView glSurfaceView;
     private NativeRenderer nativeRenderer;
 
+    private static final String STATE_SNAPSHOT = "game_snapshot";
+    private static final String SNAPSHOT_FILE = "game_snapshot.dat";
+
     private Handler handler = new Handler();
+    private final ExecutorService snapshotWriter = Executors.newSingleThreadExecutor();
     private GameDatabase gameDatabase;
+    private ProgressRepository progressRepository;
+    private LevelCache levelCache;
+    private LevelIndex levelIndex;
     private SharedPreferences sharedPreferences;
 
     @Override
@@ -61,32 +79,110 @@ public class MainActivity extends AppCompatActivity {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_main);
         gameDatabase = new GameDatabase(this);
+        progressRepository = new ProgressRepository(gameDatabase, handler);
+        progressRepository.setOnLoadedListener(this::onProgressLoaded);
+        levelCache = new LevelCache(openLevelPack(), Executors.newSingleThreadExecutor());
+        levelIndex = openLevelIndex();
         sharedPreferences = getSharedPreferences("game", MODE_PRIVATE);
         glSurfaceView = findViewById(R.id.surface_view);
-        nativeRenderer = new NativeRenderer();
+        nativeRenderer = new NativeRenderer(glSurfaceView);
         glSurfaceView.setEGLContextClientVersion(2);
         glSurfaceView.setEGLConfigChooser(8, 8, 8, 8, 16, 0);
         glSurfaceView.getHolder().setFormat(PixelFormat.TRANSLUCENT);
         glSurfaceView.setZOrderOnTop(true);
         glSurfaceView.setRenderer(nativeRenderer);
+        // 上次未完成的一局，有则直接回到游戏
+        byte[] snapshot = savedInstanceState == null ? null : savedInstanceState.getByteArray(STATE_SNAPSHOT);
+        if (snapshot == null) {
+            snapshot = readSnapshotFile();
+        }
         FragmentManager fragmentManager = getSupportFragmentManager();
         FragmentTransaction fragmentTransaction = fragmentManager.beginTransaction();
-        if (Hamiltonian.SNAPSHOT) {
+        if (Hamiltonian.SNAPSHOT && snapshot == null) {
             MainActivityFragment fragment = addFragment(fragmentTransaction, new SnapshotFragment(), SNAPSHOT_FRAGMENT);
             fragmentTransaction.show(fragment);
             handler.post(fragment::onChangeTo);
         }
         MainActivityFragment fragment = addFragment(fragmentTransaction, new HelloWorldFragment(), HELLO_WORLD_FRAGMENT);
-        if (!Hamiltonian.SNAPSHOT) {
+        if (!Hamiltonian.SNAPSHOT && snapshot == null) {
             fragmentTransaction.show(fragment);
             handler.post(fragment::onChangeTo);
         }
         addFragment(fragmentTransaction, new SelectChapterFragment(), SELECT_CHAPTER_FRAGMENT);
         addFragment(fragmentTransaction, new SelectCheckpointFragment(), SELECT_CHECKPOINT_FRAGMENT);
-        addFragment(fragmentTransaction, new GameFragment(), GAME_FRAGMENT);
+        GameFragment gameFragment = addFragment(fragmentTransaction, new GameFragment(), GAME_FRAGMENT);
+        if (snapshot != null) {
+            gameFragment.setArguments(GameFragment.resumeArguments(snapshot));
+            fragmentTransaction.show(gameFragment);
+            handler.post(gameFragment::onChangeTo);
+        }
         fragmentTransaction.commit();
     }
 
+    private byte[] readSnapshotFile() {
+        File file = new File(getFilesDir(), SNAPSHOT_FILE);
+        if (!file.exists()) return null;
+        try (DataInputStream inputStream = new DataInputStream(new FileInputStream(file))) {
+            byte[] data = new byte[(int) file.length()];
+            inputStream.readFully(data);
+            return data;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    // 在后台写入存档，snapshot 为 null 时删除存档
+    private void writeSnapshotFile(byte[] snapshot) {
+        File file = new File(getFilesDir(), SNAPSHOT_FILE);
+        snapshotWriter.execute(() -> {
+            if (snapshot == null) {
+                file.delete();
+                return;
+            }
+            File temp = new File(file.getPath() + ".tmp");
+            try (FileOutputStream outputStream = new FileOutputStream(temp)) {
+                outputStream.write(snapshot);
+            } catch (IOException e) {
+                temp.delete();
+                return;
+            }
+            temp.renameTo(file);
+        });
+    }
+
+    private byte[] takeSnapshot() {
+        GameFragment gameFragment = (GameFragment) getFragment(GAME_FRAGMENT);
+        GameSnapshot snapshot = gameFragment == null ? null : gameFragment.takeSnapshot();
+        return snapshot == null ? null : snapshot.encode();
+    }
+
+    @Override
+    protected void onSaveInstanceState(@NonNull Bundle outState) {
+        super.onSaveInstanceState(outState);
+        byte[] snapshot = takeSnapshot();
+        if (snapshot != null) {
+            outState.putByteArray(STATE_SNAPSHOT, snapshot);
+        }
+    }
+
+    private LevelPack openLevelPack() {
+        try (AssetFileDescriptor descriptor = getAssets().openFd(LevelPack.ASSET_NAME);
+             FileInputStream inputStream = descriptor.createInputStream()) {
+            return LevelPack.map(inputStream.getChannel(), descriptor.getStartOffset(), descriptor.getLength());
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private LevelIndex openLevelIndex() {
+        try (AssetFileDescriptor descriptor = getAssets().openFd(LevelIndex.ASSET_NAME);
+             FileInputStream inputStream = descriptor.createInputStream()) {
+            return LevelIndex.map(inputStream.getChannel(), descriptor.getStartOffset(), descriptor.getLength());
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
     private <T extends Fragment> T addFragment(FragmentTransaction fragmentTransaction, T fragment, String tag) {
         fragmentTransaction.add(R.id.fragment_container, fragment, tag);
         fragmentTransaction.hide(fragment);
@@ -119,6 +215,16 @@ public class MainActivity extends AppCompatActivity {
         fragmentTransaction.commit();
     }
 
+    // 成绩读入后刷新正在显示的界面，隐藏的界面在切换时刷新
+    private void onProgressLoaded() {
+        if (isDestroyed()) return;
+        for (Fragment fragment : getSupportFragmentManager().getFragments()) {
+            if (fragment instanceof MainActivityFragment && fragment.isVisible()) {
+                ((MainActivityFragment) fragment).onProgressLoaded();
+            }
+        }
+    }
+
     private Fragment getFragment(String tag) {
         FragmentManager fragmentManager = getSupportFragmentManager();
         return fragmentManager.findFragmentByTag(tag);
@@ -141,6 +247,12 @@ public class MainActivity extends AppCompatActivity {
         }
     }
 
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        gameDatabase.close();
+    }
+
     @Override
     protected void onResume() {
         super.onResume();
@@ -151,6 +263,18 @@ public class MainActivity extends AppCompatActivity {
     protected void onPause() {
         super.onPause();
         glSurfaceView.onPause();
+        writeSnapshotFile(takeSnapshot());
+    }
+
+    @Override
+    public void dump(@NonNull String prefix, @Nullable FileDescriptor fd, @NonNull PrintWriter writer, @Nullable String[] args) {
+        super.dump(prefix, fd, writer, args);
+        if (Hamiltonian.METRICS) {
+            Metrics.dump(prefix, writer);
+            if (args != null && Arrays.asList(args).contains("--reset-metrics")) {
+                Metrics.reset();
+            }
+        }
     }
 
     @Override
@@ -161,7 +285,6 @@ public class MainActivity extends AppCompatActivity {
     }
 
     private static abstract class MainActivityFragment extends Fragment {
-        private static final SparseIntArray checkpointCount = new SparseIntArray();
 
         protected MainActivity getMainActivity() {
             return (MainActivity) getContext();
@@ -200,6 +323,9 @@ public class MainActivity extends AppCompatActivity {
         protected void onChangeTo() {
         }
 
+        protected void onProgressLoaded() {
+        }
+
         protected Bundle getArgumentsOrNew() {
             Bundle arguments = getArguments();
             if (arguments == null) {
@@ -208,17 +334,40 @@ public class MainActivity extends AppCompatActivity {
             return arguments;
         }
 
-        protected GameDatabase getDatabase() {
-            return getMainActivity().gameDatabase;
+        protected ProgressRepository getProgress() {
+            return getMainActivity().progressRepository;
+        }
+
+        protected LevelCache getLevelCache() {
+            return getMainActivity().levelCache;
+        }
+
+        protected LevelPack getLevelPack() {
+            return getLevelCache().getLevelPack();
+        }
+
+        /**
+         * 构建时分析的关卡信息，不存在时为 null
+         */
+        protected LevelIndex.Entry getLevelInfo(int chapter, int checkpoint) {
+            return getMainActivity().levelIndex.get(chapter, checkpoint);
+        }
+
+        // 1 到 5 星
+        protected static String stars(int difficulty) {
+            return "★★★★★".substring(0, difficulty) + "☆☆☆☆☆".substring(difficulty);
         }
 
         protected int getChapterCheckpointCount(int chapter) {
-            int count = checkpointCount.get(chapter, -1);
-            if (count == -1) {
-                count = readChapterCheckpointCount(chapter);
-                checkpointCount.put(chapter, count);
+            return getLevelPack().getCheckpointCount(chapter);
+        }
+
+        protected Level getLevel(int chapter, int checkpoint) {
+            try {
+                return getLevelCache().get(chapter, checkpoint);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
             }
-            return count;
         }
 
         protected boolean getFlag(String key) {
@@ -230,16 +379,6 @@ public class MainActivity extends AppCompatActivity {
             editor.putBoolean(key, flag);
             editor.apply();
         }
-
-        private int readChapterCheckpointCount(int chapter) {
-            try {
-                String[] checkpoints = getContext().getAssets().list("checkpoint/" + chapter);
-                if (checkpoints == null) return 0;
-                return checkpoints.length;
-            } catch (IOException e) {
-                return 0;
-            }
-        }
     }
 
     public static class SnapshotFragment extends MainActivityFragment {
@@ -283,7 +422,7 @@ public class MainActivity extends AppCompatActivity {
         @Override
         public View onCreateView(@NonNull LayoutInflater inflater, @Nullable ViewGroup container, @Nullable Bundle savedInstanceState) {
             gameView = new GameView(getContext(), null);
-            gameView.loadGraph("checkpoint/helloworld.dat");
+            gameView.loadLevel(getLevel(0, 0));
             gameView.setOnFinishListener(new GameView.GameListener() {
                 @Override
                 public void onEnergyChange(int energy) {
@@ -337,29 +476,25 @@ public class MainActivity extends AppCompatActivity {
     }
 
     public static class SelectChapterFragment extends MainActivityFragment {
-        List<ChapterInfo> chapterInfoList;
+        List<ChapterInfo> chapterInfoList = new ArrayList<>();
         CommonRecyclerViewAdapter<ChapterInfo> viewPagerAdapter;
 
-        public SelectChapterFragment() {
-            chapterInfoList = Arrays.asList(
-                    new ChapterInfo(1),
-                    new ChapterInfo(2),
-                    new ChapterInfo(3),
-                    new ChapterInfo(4)
-            );
-        }
-
         @Nullable
         @Override
         public View onCreateView(@NonNull LayoutInflater inflater, @Nullable ViewGroup container, @Nullable Bundle savedInstanceState) {
             View view = inflater.inflate(R.layout.fragment_select_chapter, container, false);
+            chapterInfoList.clear();
+            for (int chapter : getLevelPack().getChapters()) {
+                chapterInfoList.add(new ChapterInfo(chapter));
+            }
             ViewPager2 viewPager = view.findViewById(R.id.view_pager);
             viewPager.setClipChildren(false);
             viewPagerAdapter = new CommonRecyclerViewAdapter<ChapterInfo>(getContext(), chapterInfoList, R.layout.fragment_item_select_chapter) {
                 @Override
                 protected void bindView(ViewHolder viewHolder, ChapterInfo chapterInfo, int position, int viewType) {
                     viewHolder.setTextViewText(R.id.title, "Chapter " + chapterInfo.chapter);
-                    viewHolder.setTextViewText(R.id.completion, String.format("完成度：%d/%d", chapterInfo.getFinishCount(), getChapterCheckpointCount(chapterInfo.chapter)));
+                    viewHolder.setTextViewText(R.id.completion, String.format("完成度：%s/%d", chapterInfo.getFinishCount(), getChapterCheckpointCount(chapterInfo.chapter)));
+                    viewHolder.setTextViewText(R.id.difficulty, chapterInfo.getDifficulty());
                     viewHolder.getView(R.id.card).setOnClickListener(v -> onClick(position));
                 }
             };
@@ -382,36 +517,48 @@ public class MainActivity extends AppCompatActivity {
         @Override
         protected void onChangeTo() {
             super.onChangeTo();
-            for (ChapterInfo chapterInfo : chapterInfoList) {
-                chapterInfo.clearFinishCount();
-            }
+            viewPagerAdapter.notifyDataSetChanged();
+        }
+
+        @Override
+        protected void onProgressLoaded() {
             viewPagerAdapter.notifyDataSetChanged();
         }
 
         private void onClick(int position) {
             Bundle argument = new Bundle();
-            argument.putInt(SelectCheckpointFragment.ARGUMENT_CHAPTER, position + 1);
+            argument.putInt(SelectCheckpointFragment.ARGUMENT_CHAPTER, chapterInfoList.get(position).chapter);
             changeFragment(SELECT_CHECKPOINT_FRAGMENT, argument);
         }
 
         class ChapterInfo {
             private int chapter;
-            private int finishCount;
 
             ChapterInfo(int chapter) {
                 this.chapter = chapter;
-                finishCount = -1;
             }
 
-            int getFinishCount() {
-                if (finishCount == -1) {
-                    finishCount = getDatabase().getFinishCount(chapter);
-                }
-                return finishCount;
+            // 成绩读入前显示占位
+            String getFinishCount() {
+                ProgressRepository progress = getProgress();
+                return progress.isLoaded() ? String.valueOf(progress.getFinishCount(chapter)) : "-";
             }
 
-            void clearFinishCount() {
-                finishCount = -1;
+            // 本章各关难度的范围，索引中没有本章时为空
+            String getDifficulty() {
+                int min = 0, max = 0;
+                int count = getChapterCheckpointCount(chapter);
+                for (int i = 1; i <= count; i++) {
+                    LevelIndex.Entry info = getLevelInfo(chapter, i);
+                    if (info == null) continue;
+                    int difficulty = info.getDifficulty();
+                    min = min == 0 ? difficulty : Math.min(min, difficulty);
+                    max = Math.max(max, difficulty);
+                }
+                if (max == 0) {
+                    return "";
+                }
+                return min == max ? "难度：" + stars(min) : "难度：" + stars(min) + " ~ " + stars(max);
             }
         }
     }
@@ -439,6 +586,7 @@ public class MainActivity extends AppCompatActivity {
                 protected void bindView(ViewHolder viewHolder, CheckpointInfo checkpointInfo, int position, int viewType) {
                     viewHolder.setTextViewText(R.id.text, String.valueOf(checkpointInfo.checkpoint));
                     viewHolder.setTextViewText(R.id.time, checkpointInfo.getTime());
+                    viewHolder.setTextViewText(R.id.difficulty, checkpointInfo.getDifficulty());
                     viewHolder.getView(R.id.text).setOnClickListener(v -> onSelectCheckpoint(position));
                 }
             };
@@ -462,6 +610,13 @@ public class MainActivity extends AppCompatActivity {
                 checkpointInfoList.add(new CheckpointInfo(i));
             }
             recyclerViewAdapter.notifyDataSetChanged();
+            // 选关界面显示整章，提前解析这一章开头的关卡
+            getLevelCache().prefetchChapter(chapter, 1);
+        }
+
+        @Override
+        protected void onProgressLoaded() {
+            recyclerViewAdapter.notifyDataSetChanged();
         }
 
         private void onSelectCheckpoint(int checkpoint) {
@@ -473,17 +628,18 @@ public class MainActivity extends AppCompatActivity {
 
         class CheckpointInfo {
             int checkpoint;
-            int time;
 
             public CheckpointInfo(int checkpoint) {
                 this.checkpoint = checkpoint;
-                time = -1;
             }
 
+            // 成绩读入前显示占位，与未通过的 "---" 区分
             String getTime() {
-                if (time == -1) {
-                    time = getDatabase().getCheckpointPassTime(chapter, checkpoint);
+                ProgressRepository progress = getProgress();
+                if (!progress.isLoaded()) {
+                    return "-";
                 }
+                int time = progress.getBestRecord(chapter, checkpoint);
                 if (time == -1) {
                     return "---";
                 }
@@ -491,12 +647,21 @@ public class MainActivity extends AppCompatActivity {
                 int second = time % 60;
                 return String.format("%02d'%02d\"", minute, second);
             }
+
+            String getDifficulty() {
+                LevelIndex.Entry info = getLevelInfo(chapter, checkpoint);
+                if (info == null) {
+                    return "";
+                }
+                return stars(info.getDifficulty());
+            }
         }
     }
 
     public static class GameFragment extends MainActivityFragment {
         static final String ARGUMENT_CHAPTER = "chapter";
         static final String ARGUMENT_CHECKPOINT = "checkpoint";
+        static final String ARGUMENT_SNAPSHOT = "snapshot";
 
         static final SparseIntArray teachPage = new SparseIntArray();
 
@@ -520,6 +685,9 @@ public class MainActivity extends AppCompatActivity {
         public View onCreateView(@NonNull LayoutInflater inflater, @Nullable ViewGroup container, @Nullable Bundle savedInstanceState) {
             View view = inflater.inflate(R.layout.fragment_game, container, false);
             gameView = view.findViewById(R.id.game_view);
+            if (Hamiltonian.NATIVE_BOARD) {
+                gameView.setBoardRenderer(getMainActivity().nativeRenderer);
+            }
             energyView = view.findViewById(R.id.energy);
             gameView.setOnFinishListener(new GameView.GameListener() {
                 @Override
@@ -532,9 +700,19 @@ public class MainActivity extends AppCompatActivity {
                     GameFragment.this.onFinish();
                 }
             });
-            view.findViewById(R.id.back).setOnClickListener(v -> changeFragment(SELECT_CHECKPOINT_FRAGMENT));
+            view.findViewById(R.id.back).setOnClickListener(v -> {
+                gameView.cancelLoad();
+                backToCheckpoints();
+            });
             view.findViewById(R.id.undo).setOnClickListener(v -> gameView.gotoLast());
             view.findViewById(R.id.retry).setOnClickListener(v -> gameView.clearRoad());
+            view.findViewById(R.id.hint).setOnClickListener(v -> gameView.requestHint(point -> {
+                if (point == HintEngine.UNSOLVABLE) {
+                    Toast.makeText(getContext(), R.string.hint_unsolvable, Toast.LENGTH_SHORT).show();
+                } else if (point == HintEngine.UNKNOWN) {
+                    Toast.makeText(getContext(), R.string.hint_unknown, Toast.LENGTH_SHORT).show();
+                }
+            }));
             return view;
         }
 
@@ -548,8 +726,31 @@ public class MainActivity extends AppCompatActivity {
             hasNext = checkpoint < getChapterCheckpointCount(chapter);
 
             energyView.setVisibility(View.GONE);
-            gameView.loadGraph(String.format("checkpoint/%d/%d.dat", chapter, checkpoint));
-            if (!getFlag(String.valueOf(chapter * 1000 + checkpoint))) {
+            GameSnapshot snapshot = readSnapshot(argument);
+            LevelCache levelCache = getLevelCache();
+            int chapter = this.chapter;
+            int checkpoint = this.checkpoint;
+            gameView.loadLevelAsync(() -> levelCache.get(chapter, checkpoint), new GameView.LoadListener() {
+                @Override
+                public void onLoaded() {
+                    startTime = SystemClock.elapsedRealtime();
+                    if (snapshot != null) {
+                        gameView.restoreRoad(snapshot.road);
+                        startTime -= snapshot.elapsed;
+                    }
+                }
+
+                @Override
+                public void onLoadFailed(Exception e) {
+                    Toast.makeText(getContext(), R.string.load_failed, Toast.LENGTH_SHORT).show();
+                    backToCheckpoints();
+                }
+            });
+            if (hasNext) {
+                levelCache.prefetch(chapter, checkpoint + 1);
+            }
+            // 从存档恢复时不再显示教学，否则关闭教学会清掉存档中的用时
+            if (snapshot == null && !getFlag(String.valueOf(chapter * 1000 + checkpoint))) {
                 int page = teachPage.get(chapter * 1000 + checkpoint, -1);
                 if (page != -1) {
                     showTeachDialog(String.format("teach/%d.png", page)).setOnDismissListener(dia -> startTime = SystemClock.elapsedRealtime());
@@ -558,10 +759,43 @@ public class MainActivity extends AppCompatActivity {
             startTime = SystemClock.elapsedRealtime();
         }
 
+        static Bundle resumeArguments(byte[] snapshot) {
+            Bundle argument = new Bundle();
+            argument.putByteArray(ARGUMENT_SNAPSHOT, snapshot);
+            return argument;
+        }
+
+        // 取出参数中的存档，关卡以存档为准；存档只使用一次
+        private GameSnapshot readSnapshot(Bundle argument) {
+            byte[] data = argument.getByteArray(ARGUMENT_SNAPSHOT);
+            if (data == null) return null;
+            argument.remove(ARGUMENT_SNAPSHOT);
+            GameSnapshot snapshot;
+            try {
+                snapshot = GameSnapshot.decode(data);
+            } catch (IOException e) {
+                return null;
+            }
+            if (getLevelPack().getLevel(snapshot.chapter, snapshot.checkpoint) == null) {
+                return null;
+            }
+            chapter = snapshot.chapter;
+            checkpoint = snapshot.checkpoint;
+            hasNext = checkpoint < getChapterCheckpointCount(chapter);
+            return snapshot;
+        }
+
+        GameSnapshot takeSnapshot() {
+            if (!isVisible() || gameView == null || !gameView.isInProgress()) {
+                return null;
+            }
+            return new GameSnapshot(chapter, checkpoint, SystemClock.elapsedRealtime() - startTime, gameView.getRoad());
+        }
+
         private void onFinish() {
             long endTime = SystemClock.elapsedRealtime();
             long run = endTime - startTime + 1000;
-            getDatabase().newRecord(chapter, checkpoint, (int) (run / 1000));
+            getProgress().newRecord(chapter, checkpoint, (int) (run / 1000));
             if (teachPage.get(chapter * 1000 + checkpoint, -1) != -1) {
                 saveFlag(String.valueOf(chapter * 1000 + checkpoint), true);
             }
@@ -591,10 +825,17 @@ public class MainActivity extends AppCompatActivity {
             });
             view.findViewById(R.id.back).setOnClickListener(v -> {
                 dialog.dismiss();
-                changeFragment(SELECT_CHECKPOINT_FRAGMENT);
+                backToCheckpoints();
             });
         }
 
+        // 从存档恢复时选关界面还没有参数，需要告诉它当前的章节
+        private void backToCheckpoints() {
+            Bundle argument = new Bundle();
+            argument.putInt(SelectCheckpointFragment.ARGUMENT_CHAPTER, chapter);
+            changeFragment(SELECT_CHECKPOINT_FRAGMENT, argument);
+        }
+
         private void onEnergyChange(int energy) {
             energyView.setVisibility(View.VISIBLE);
             energyView.setText("能量：" + energy);
@@ -602,45 +843,126 @@ public class MainActivity extends AppCompatActivity {
     }
 
     static class GameDatabase extends SQLiteOpenHelper {
+        // 所有数据库操作都在这个线程中进行；各实例共用，重建 Activity 时新实例的查询排在旧实例的写入与关闭之后
+        private static final ExecutorService worker = Executors.newSingleThreadExecutor();
+
+        // 尚未写入的记录，每 3 个数为 (chapter, checkpoint, record)
+        private final List<int[]> pendingRecords = new ArrayList<>();
+
+        // 以下只在 worker 中访问
+        private SQLiteDatabase db;
+        private SQLiteStatement insertStatement;
+        private volatile boolean closed;
+
         public GameDatabase(Context context) {
-            super(context, "game.db", null, 1);
+            super(context, "game.db", null, 2);
         }
 
         @Override
         public void onCreate(SQLiteDatabase db) {
             db.execSQL("create table checkpoint(chapter int, checkpoint int, record int)");
+            db.execSQL("create index checkpoint_level on checkpoint(chapter, checkpoint, record)");
         }
 
         @Override
         public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+            if (oldVersion < 2) {
+                db.execSQL("create index checkpoint_level on checkpoint(chapter, checkpoint, record)");
+            }
         }
 
-        int getFinishCount(int chapter) {
-            try (SQLiteDatabase db = getReadableDatabase()) {
-                Cursor cursor = db.rawQuery("select count(distinct checkpoint) from checkpoint where chapter=?", new String[]{String.valueOf(chapter)});
-                if (cursor.moveToFirst()) {
-                    return cursor.getInt(0);
-                } else {
-                    return -1;
-                }
+        // 连接在第一次使用时打开，直到 close 才关闭
+        private SQLiteDatabase open() {
+            if (db == null) {
+                db = getWritableDatabase();
+                insertStatement = db.compileStatement("insert into checkpoint (chapter, checkpoint, record) values (?, ?, ?)");
             }
+            return db;
+        }
+
+        interface BestRecordsCallback {
+            void onLoaded(SparseIntArray bestRecords);
         }
 
-        int getCheckpointPassTime(int chapter, int checkpoint) {
-            try (SQLiteDatabase db = getReadableDatabase()) {
-                Cursor cursor = db.rawQuery("select min(record) from checkpoint where chapter=? and checkpoint=?", new String[]{String.valueOf(chapter), String.valueOf(checkpoint)});
-                if (cursor.moveToFirst() && !cursor.isNull(0)) {
-                    return cursor.getInt(0);
-                } else {
-                    return -1;
+        /**
+         * 在后台查询每关的最好成绩，键为 chapter * 1000 + checkpoint，完成后通过 handler 回调
+         */
+        void loadBestRecords(Handler handler, BestRecordsCallback callback) {
+            worker.execute(() -> {
+                open();
+                flushRecords();
+                SparseIntArray result = new SparseIntArray();
+                try (Cursor cursor = db.rawQuery("select chapter, checkpoint, min(record) from checkpoint group by chapter, checkpoint", null)) {
+                    while (cursor.moveToNext()) {
+                        result.put(cursor.getInt(0) * 1000 + cursor.getInt(1), cursor.getInt(2));
+                    }
                 }
-            }
+                handler.post(() -> callback.onLoaded(result));
+            });
         }
 
+        /**
+         * 在后台写入，连续的多条记录合并为一个事务；关闭后调用时忽略
+         */
         void newRecord(int chapter, int checkpoint, int record) {
-            try (SQLiteDatabase db = getWritableDatabase()) {
-                db.execSQL("insert into checkpoint (chapter, checkpoint, record) values (?, ?, ?)", new Object[]{chapter, checkpoint, record});
+            if (closed) return;
+            boolean schedule;
+            synchronized (pendingRecords) {
+                schedule = pendingRecords.isEmpty();
+                pendingRecords.add(new int[]{chapter, checkpoint, record});
+            }
+            if (schedule) {
+                worker.execute(() -> {
+                    open();
+                    flushRecords();
+                });
+            }
+        }
+
+        private void flushRecords() {
+            int[][] records;
+            synchronized (pendingRecords) {
+                if (pendingRecords.isEmpty()) return;
+                records = pendingRecords.toArray(new int[0][]);
+                pendingRecords.clear();
+            }
+            db.beginTransaction();
+            try {
+                for (int[] record : records) {
+                    insertStatement.bindLong(1, record[0]);
+                    insertStatement.bindLong(2, record[1]);
+                    insertStatement.bindLong(3, record[2]);
+                    insertStatement.executeInsert();
+                }
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
             }
         }
+
+        /**
+         * 在 Activity 销毁时调用，在后台写入剩余的记录并关闭连接，不等待完成
+         */
+        @Override
+        public void close() {
+            if (closed) return;
+            closed = true;
+            worker.execute(() -> {
+                boolean hasPending;
+                synchronized (pendingRecords) {
+                    hasPending = !pendingRecords.isEmpty();
+                }
+                if (hasPending) {
+                    open();
+                }
+                if (db != null) {
+                    flushRecords();
+                    insertStatement.close();
+                    insertStatement = null;
+                    db = null;
+                }
+                super.close();
+            });
+        }
     }
 }
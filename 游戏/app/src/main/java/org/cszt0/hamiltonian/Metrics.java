@@ -0,0 +1,167 @@
+package org.cszt0.hamiltonian;
+
+import java.io.PrintWriter;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 性能统计，开关为 {@link Hamiltonian#METRICS}。调用处都先判断该常量，关闭时统计代码会被编译器去掉。
+ * <p>
+ * 查看：打开开关后游戏界面左上角显示统计；或 adb shell dumpsys activity org.cszt0.hamiltonian/.MainActivity，
+ * 加参数 --reset-metrics 在输出后清空
+ */
+public class Metrics {
+
+    public static final Histogram DRAW = new Histogram("绘制");
+    public static final Histogram GL_FRAME = new Histogram("GL 帧");
+    public static final Histogram TOUCH_TO_DRAW = new Histogram("触摸到绘制");
+    public static final Histogram LEVEL_LOAD = new Histogram("关卡加载");
+
+    private static final Histogram[] HISTOGRAMS = {DRAW, GL_FRAME, TOUCH_TO_DRAW, LEVEL_LOAD};
+
+    /**
+     * 每项一行，可直接显示
+     */
+    public static String[] summary() {
+        String[] lines = new String[HISTOGRAMS.length];
+        for (int i = 0; i < HISTOGRAMS.length; i++) {
+            lines[i] = HISTOGRAMS[i].summary();
+        }
+        return lines;
+    }
+
+    public static void dump(String prefix, PrintWriter writer) {
+        writer.print(prefix);
+        writer.println("Metrics:");
+        for (String line : summary()) {
+            writer.print(prefix);
+            writer.print("  ");
+            writer.println(line);
+        }
+    }
+
+    public static void reset() {
+        for (Histogram histogram : HISTOGRAMS) {
+            histogram.reset();
+        }
+    }
+
+    /**
+     * 以纳秒记录耗时的直方图：每个 2 的幂区间再等分为 16 个桶，相对误差不超过 1/16。
+     * 记录只做原子加，可在任意线程调用
+     */
+    public static class Histogram {
+        private static final int SUB_BUCKET_BITS = 4;
+        private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+        // 最大区分到 2^40 ns（约 18 分钟），更大的值记入最后一个桶
+        private static final int MAX_BITS = 40;
+        private static final double[] SUMMARY_PERCENTILES = {50, 90, 99};
+
+        final String name;
+        private final AtomicLongArray counts = new AtomicLongArray((MAX_BITS - SUB_BUCKET_BITS + 1) * SUB_BUCKETS);
+        private final AtomicLong max = new AtomicLong();
+
+        Histogram(String name) {
+            this.name = name;
+        }
+
+        public void record(long nanos) {
+            if (nanos < 0) nanos = 0;
+            counts.incrementAndGet(bucket(nanos));
+            long current;
+            while (nanos > (current = max.get()) && !max.compareAndSet(current, nanos)) ;
+        }
+
+        static int bucket(long value) {
+            if (value < SUB_BUCKETS) return (int) value;
+            int exponent = 63 - Long.numberOfLeadingZeros(value);
+            if (exponent >= MAX_BITS) return (MAX_BITS - SUB_BUCKET_BITS + 1) * SUB_BUCKETS - 1;
+            int shift = exponent - SUB_BUCKET_BITS;
+            return (shift + 1) * SUB_BUCKETS + (int) (value >>> shift & (SUB_BUCKETS - 1));
+        }
+
+        // 桶中的最大值
+        static long highestValue(int bucket) {
+            if (bucket < SUB_BUCKETS) return bucket;
+            int shift = bucket / SUB_BUCKETS - 1;
+            return ((long) (SUB_BUCKETS + bucket % SUB_BUCKETS + 1) << shift) - 1;
+        }
+
+        public long getCount() {
+            long count = 0;
+            for (int i = 0; i < counts.length(); i++) {
+                count += counts.get(i);
+            }
+            return count;
+        }
+
+        public long getMax() {
+            return max.get();
+        }
+
+        /**
+         * @param percentile 0 到 100
+         * @return 不超过该比例的记录所在桶的最大值，没有记录时为 0
+         */
+        public long getValueAtPercentile(double percentile) {
+            return getValuesAtPercentiles(percentile)[0];
+        }
+
+        /**
+         * 从同一份快照中取多个百分位，比逐个调用 {@link #getValueAtPercentile} 少复制计数
+         *
+         * @param percentiles 0 到 100，按升序排列
+         */
+        public long[] getValuesAtPercentiles(double... percentiles) {
+            long[] snapshot = snapshot();
+            return valuesAtPercentiles(snapshot, total(snapshot), percentiles);
+        }
+
+        private long[] snapshot() {
+            long[] snapshot = new long[counts.length()];
+            for (int i = 0; i < snapshot.length; i++) {
+                snapshot[i] = counts.get(i);
+            }
+            return snapshot;
+        }
+
+        private static long total(long[] snapshot) {
+            long total = 0;
+            for (long count : snapshot) {
+                total += count;
+            }
+            return total;
+        }
+
+        private long[] valuesAtPercentiles(long[] snapshot, long total, double[] percentiles) {
+            long[] values = new long[percentiles.length];
+            if (total == 0) return values;
+            long max = getMax();
+            int bucket = 0;
+            long seen = snapshot[0];
+            for (int j = 0; j < percentiles.length; j++) {
+                long target = Math.max(1, (long) Math.ceil(total * percentiles[j] / 100));
+                while (seen < target && bucket < snapshot.length - 1) {
+                    seen += snapshot[++bucket];
+                }
+                values[j] = seen >= target ? Math.min(highestValue(bucket), max) : max;
+            }
+            return values;
+        }
+
+        public void reset() {
+            for (int i = 0; i < counts.length(); i++) {
+                counts.set(i, 0);
+            }
+            max.set(0);
+        }
+
+        public String summary() {
+            long[] snapshot = snapshot();
+            long count = total(snapshot);
+            long[] values = valuesAtPercentiles(snapshot, count, SUMMARY_PERCENTILES);
+            return String.format("%s n=%d p50=%.2f p90=%.2f p99=%.2f max=%.2f ms", name, count,
+                    values[0] / 1e6, values[1] / 1e6, values[2] / 1e6, getMax() / 1e6);
+        }
+    }
+}
@@ -1,7 +1,11 @@
 package org.cszt0.hamiltonian;
 
+import android.graphics.Bitmap;
+import android.opengl.GLES20;
 import android.opengl.GLSurfaceView;
+import android.opengl.GLUtils;
 import android.view.MotionEvent;
+import android.view.View;
 
 import javax.microedition.khronos.egl.EGLConfig;
 import javax.microedition.khronos.opengles.GL10;
@@ -10,13 +14,22 @@ public class NativeRenderer implements GLSurfaceView.Renderer {
 
     private long nativePointer;
 
-    private int width, height;
+    private final GLSurfaceView surfaceView;
+    private volatile int width, height;
+    // 触摸点缓冲区，(x, y) 交替存放，已换算为 GL 坐标
+    private float[] touchPoints = new float[64];
+
+    // 棋盘文字贴图，在 UI 线程生成、GL 线程上传；表面重建后需要重新上传
+    private Bitmap labels;
+    private boolean labelsChanged;
+    private int labelTexture;
 
     static {
         System.loadLibrary("renderer");
     }
 
-    NativeRenderer() {
+    NativeRenderer(GLSurfaceView surfaceView) {
+        this.surfaceView = surfaceView;
         nativePointer = nativeAlloc();
     }
 
@@ -29,6 +42,10 @@ public class NativeRenderer implements GLSurfaceView.Renderer {
     @Override
     public void onSurfaceCreated(GL10 gl, EGLConfig config) {
         nativeSurfaceCreated(nativePointer);
+        synchronized (this) {
+            labelTexture = 0;
+            labelsChanged = true;
+        }
     }
 
     @Override
@@ -40,7 +57,77 @@ public class NativeRenderer implements GLSurfaceView.Renderer {
 
     @Override
     public void onDrawFrame(GL10 gl) {
+        long frameStart = Hamiltonian.METRICS ? System.nanoTime() : 0;
+        synchronized (this) {
+            if (labelsChanged) {
+                uploadLabels();
+                labelsChanged = false;
+            }
+        }
         nativeDrawFrame(nativePointer);
+        if (Hamiltonian.METRICS) {
+            Metrics.GL_FRAME.record(System.nanoTime() - frameStart);
+        }
+    }
+
+    private void uploadLabels() {
+        if (labels == null) {
+            nativeSetBoardTexture(nativePointer, 0);
+            return;
+        }
+        if (labelTexture == 0) {
+            int[] textures = new int[1];
+            GLES20.glGenTextures(1, textures, 0);
+            labelTexture = textures[0];
+        }
+        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, labelTexture);
+        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_LINEAR);
+        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_LINEAR);
+        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_S, GLES20.GL_CLAMP_TO_EDGE);
+        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_T, GLES20.GL_CLAMP_TO_EDGE);
+        GLUtils.texImage2D(GLES20.GL_TEXTURE_2D, 0, labels, 0);
+        nativeSetBoardTexture(nativePointer, labelTexture);
+    }
+
+    /**
+     * 设置棋盘几何数据，图或控件大小变化时调用；在下一次 {@link #setBoardState} 之前不绘制棋盘
+     *
+     * @param board      棋盘所在的控件，用于换算坐标
+     * @param labels     文字贴图，没有文字时为 null
+     * @param labelRects 每个点 4 个数，为文字在贴图中的范围 (u0, v0, u1, v1)，没有文字的点为 -1
+     */
+    public void setBoardGeometry(View board, BoardGeometry geometry, Bitmap labels, float[] labelRects) {
+        int[] boardLocation = new int[2];
+        int[] surfaceLocation = new int[2];
+        board.getLocationInWindow(boardLocation);
+        surfaceView.getLocationInWindow(surfaceLocation);
+        float[] points = new float[geometry.pointCount * 3];
+        for (int i = 0; i < geometry.pointCount; i++) {
+            points[i * 3] = geometry.pointX[i];
+            points[i * 3 + 1] = geometry.pointY[i];
+            points[i * 3 + 2] = geometry.square[i] ? 1 : 0;
+        }
+        nativeSetBoardGeometry(nativePointer, geometry.edgeLines, geometry.arrowLines, points,
+                geometry.lineWidth, geometry.radius,
+                boardLocation[0] - surfaceLocation[0], boardLocation[1] - surfaceLocation[1],
+                labelRects);
+        synchronized (this) {
+            this.labels = labels;
+            labelsChanged = true;
+        }
+    }
+
+    /**
+     * 设置每一帧的棋盘状态，颜色均为 ARGB，不需要的点传 -1
+     */
+    public void setBoardState(int[] edgeColors, int[] pointColors, int hintPoint, int hintColor,
+                              int headPoint, int headColor, boolean pressed, float pressX, float pressY) {
+        nativeSetBoardState(nativePointer, edgeColors, pointColors, hintPoint, hintColor,
+                headPoint, headColor, pressed, pressX, pressY);
+    }
+
+    public void clearBoard() {
+        nativeClearBoard(nativePointer);
     }
 
     private static native long nativeAlloc();
@@ -53,14 +140,44 @@ public class NativeRenderer implements GLSurfaceView.Renderer {
 
     private static native void nativeDrawFrame(long nativePointer);
 
-    private static native void addParticle(long nativePointer, float x, float y);
+    private static native void addParticles(long nativePointer, float[] points, int count);
+
+    private static native void nativeSetBoardGeometry(long nativePointer, float[] edgeLines, float[] arrowLines,
+                                                      float[] points, float lineWidth, float radius,
+                                                      float offsetX, float offsetY, float[] labelRects);
 
+    private static native void nativeSetBoardState(long nativePointer, int[] edgeColors, int[] pointColors,
+                                                   int hintPoint, int hintColor, int headPoint, int headColor,
+                                                   boolean pressed, float pressX, float pressY);
+
+    private static native void nativeSetBoardTexture(long nativePointer, int texture);
+
+    private static native void nativeClearBoard(long nativePointer);
+
+    /**
+     * 把事件中所有手指的当前位置与历史位置一次性交给渲染线程
+     */
     public void dispatchTouchEvent(MotionEvent motionEvent) {
+        int width = this.width, height = this.height;
+        if (width == 0 || height == 0) return;
         int pointerCount = motionEvent.getPointerCount();
-        MotionEvent.PointerCoords pointerCoords = new MotionEvent.PointerCoords();
+        int historySize = motionEvent.getHistorySize();
+        int count = pointerCount * (historySize + 1);
+        if (touchPoints.length < count * 2) {
+            touchPoints = new float[count * 2];
+        }
+        float[] points = touchPoints;
+        int offset = 0;
+        for (int h = 0; h < historySize; h++) {
+            for (int i = 0; i < pointerCount; i++) {
+                points[offset++] = motionEvent.getHistoricalX(i, h) * 2 / width - 1;
+                points[offset++] = 1 - motionEvent.getHistoricalY(i, h) * 2 / height;
+            }
+        }
         for (int i = 0; i < pointerCount; i++) {
-            motionEvent.getPointerCoords(i, pointerCoords);
-            addParticle(nativePointer, pointerCoords.x * 2 / width - 1, 1 - pointerCoords.y * 2 / height);
+            points[offset++] = motionEvent.getX(i) * 2 / width - 1;
+            points[offset++] = 1 - motionEvent.getY(i) * 2 / height;
         }
+        addParticles(nativePointer, points, count);
     }
 }
@@ -0,0 +1,73 @@
+package org.cszt0.hamiltonian;
+
+import android.os.Handler;
+import android.util.SparseIntArray;
+
+/**
+ * 每关的最好成绩与每章的完成关数。创建时在后台用一次查询读入内存，之后随新记录更新，查询不再访问数据库。
+ * 只在主线程使用；查询完成前只有本次运行中的新记录，界面据 {@link #isLoaded} 显示占位，完成后回调 {@link OnLoadedListener}
+ */
+public class ProgressRepository {
+
+    public interface OnLoadedListener {
+        void onProgressLoaded();
+    }
+
+    private final MainActivity.GameDatabase database;
+    // 键为 chapter * 1000 + checkpoint，值为最好成绩（秒）
+    private final SparseIntArray bestRecords = new SparseIntArray();
+    private final SparseIntArray finishCounts = new SparseIntArray();
+    private boolean loaded;
+    private OnLoadedListener onLoadedListener;
+
+    ProgressRepository(MainActivity.GameDatabase database, Handler handler) {
+        this.database = database;
+        database.loadBestRecords(handler, this::onLoaded);
+    }
+
+    // 查询之前写入的新记录可能不在结果中，逐条合并
+    private void onLoaded(SparseIntArray records) {
+        for (int i = 0; i < records.size(); i++) {
+            put(records.keyAt(i), records.valueAt(i));
+        }
+        loaded = true;
+        if (onLoadedListener != null) {
+            onLoadedListener.onProgressLoaded();
+        }
+    }
+
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    public void setOnLoadedListener(OnLoadedListener onLoadedListener) {
+        this.onLoadedListener = onLoadedListener;
+    }
+
+    /**
+     * 返回最好成绩（秒），没有通过时返回 -1
+     */
+    public int getBestRecord(int chapter, int checkpoint) {
+        return bestRecords.get(chapter * 1000 + checkpoint, -1);
+    }
+
+    public int getFinishCount(int chapter) {
+        return finishCounts.get(chapter);
+    }
+
+    public void newRecord(int chapter, int checkpoint, int record) {
+        database.newRecord(chapter, checkpoint, record);
+        put(chapter * 1000 + checkpoint, record);
+    }
+
+    private void put(int key, int record) {
+        int best = bestRecords.get(key, -1);
+        if (best == -1) {
+            int chapter = key / 1000;
+            finishCounts.put(chapter, finishCounts.get(chapter) + 1);
+        }
+        if (best == -1 || record < best) {
+            bestRecords.put(key, record);
+        }
+    }
+}
@@ -0,0 +1,359 @@
+package org.cszt0.hamiltonian;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+public class Solver {
+
+    // 剩余步数不超过该值时不再拆分任务
+    private static final int SEQUENTIAL_DEPTH = 6;
+    // 最多拆分的层数
+    private static final int MAX_SPLIT_LEVEL = 8;
+    // 当前线程积压的任务超过该值时不再拆分
+    private static final int MAX_SURPLUS_TASKS = 2;
+
+    final int size;
+    final int words;
+    final int start;
+    final int end;
+    final int depth;
+    // 邻接位图，第 i 行为从 i 出发可到达的点
+    final long[] adjacency;
+    final int[] energyRequire;
+    // 剩余路过次数：once 为还需至少路过一次的点，twice 为还需路过两次的点
+    final long[] initialOnce;
+    final long[] initialTwice;
+
+    public Solver(Graph graph) {
+        size = graph.pointList.size();
+        words = (size + 63) >>> 6;
+        adjacency = new long[size * words];
+        energyRequire = new int[size];
+        initialOnce = new long[words];
+        initialTwice = new long[words];
+        int start = -1;
+        int end = -1;
+        int depth = 0;
+        // 寻找起点、终点
+        for (Graph.Point point : graph.pointList) {
+            if (point.isStart) start = point.index;
+            if (point.isEnd) end = point.index;
+            depth += point.isTwice ? 2 : 1;
+            energyRequire[point.index] = point.energy;
+            initialOnce[point.index >>> 6] |= 1L << point.index;
+            if (point.isTwice) {
+                initialTwice[point.index >>> 6] |= 1L << point.index;
+            }
+        }
+        this.start = start;
+        this.end = end;
+        this.depth = depth;
+        // 邻接位图
+        for (Graph.Edge edge : graph.edgeList) {
+            if (edge.direct != Graph.Edge.Direct.A2B) {
+                adjacency[edge.pointB * words + (edge.pointA >>> 6)] |= 1L << edge.pointA;
+            }
+            if (edge.direct != Graph.Edge.Direct.B2A) {
+                adjacency[edge.pointA * words + (edge.pointB >>> 6)] |= 1L << edge.pointB;
+            }
+        }
+    }
+
+    public long countSolutions() {
+        State state = new State(this);
+        if (start != -1) {
+            return countFrom(state, start);
+        }
+        long total = 0;
+        for (int i = 0; i < size; i++) {
+            if (canStartAt(i)) {
+                total += countFrom(state, i);
+            }
+        }
+        return total;
+    }
+
+    /**
+     * 计数到超过 limit 为止；返回值大于 limit 时只说明解的个数超过 limit
+     */
+    public long countSolutions(long limit) {
+        State state = new State(this);
+        long total = 0;
+        for (int i = 0; i < size && total <= limit; i++) {
+            if (start != -1 ? i != start : !canStartAt(i)) continue;
+            boolean twice = state.take(i);
+            total += count(state, i, energyRequire[i], depth - 1, limit - total);
+            state.restore(i, twice);
+        }
+        return total;
+    }
+
+    public long countSolutionsParallel() {
+        return countSolutionsParallel(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * 按首步拆分搜索树，并在较浅的层数按需继续拆分，每个任务持有自己的状态副本
+     */
+    public long countSolutionsParallel(ForkJoinPool pool) {
+        return pool.invoke(new CountTask(this, new State(this), -1, 0, depth, 0));
+    }
+
+    /**
+     * 寻找一个解，返回依次经过的点；无解时返回 null
+     */
+    public int[] findSolution() {
+        State state = new State(this);
+        int[] path = new int[depth];
+        if (start != -1) {
+            return findFrom(state, start, path) ? path : null;
+        }
+        for (int i = 0; i < size; i++) {
+            if (canStartAt(i) && findFrom(state, i, path)) {
+                return path;
+            }
+        }
+        return null;
+    }
+
+    // 与 GameView.gotoPoint 中路线为空时的规则一致
+    boolean canStartAt(int index) {
+        return energyRequire[index] >= 0 && (depth == 1 || (initialTwice[index >>> 6] & (1L << index)) != 0 || index != end);
+    }
+
+    private long countFrom(State state, int first) {
+        boolean twice = state.take(first);
+        long count = count(state, first, energyRequire[first], depth - 1);
+        state.restore(first, twice);
+        return count;
+    }
+
+    private boolean findFrom(State state, int first, int[] path) {
+        path[0] = first;
+        boolean twice = state.take(first);
+        boolean found = find(state, first, energyRequire[first], depth - 1, path);
+        state.restore(first, twice);
+        return found;
+    }
+
+    long candidates(long[] once, int row, int w, int depth) {
+        long candidates = adjacency[row + w] & once[w];
+        // 终点只能作为最后一步
+        if (depth != 1 && end != -1 && w == end >>> 6) {
+            candidates &= ~(1L << end);
+        }
+        return candidates;
+    }
+
+    long count(State state, int last, int energy, int depth) {
+        if (depth == 0) {
+            return 1;
+        }
+        long total = 0;
+        long[] once = state.once;
+        long[] twice = state.twice;
+        int row = last * words;
+        for (int w = 0; w < words; w++) {
+            long candidates = candidates(once, row, w, depth);
+            while (candidates != 0) {
+                long bit = candidates & -candidates;
+                candidates ^= bit;
+                int next = (w << 6) | Long.numberOfTrailingZeros(bit);
+                int nextEnergy = energy + energyRequire[next];
+                if (nextEnergy < 0) continue;
+                if ((twice[w] & bit) != 0) {
+                    twice[w] ^= bit;
+                    total += count(state, next, nextEnergy, depth - 1);
+                    twice[w] |= bit;
+                } else {
+                    once[w] ^= bit;
+                    total += count(state, next, nextEnergy, depth - 1);
+                    once[w] |= bit;
+                }
+            }
+        }
+        return total;
+    }
+
+    private long count(State state, int last, int energy, int depth, long limit) {
+        if (depth == 0) {
+            return 1;
+        }
+        long total = 0;
+        long[] once = state.once;
+        long[] twice = state.twice;
+        int row = last * words;
+        for (int w = 0; w < words; w++) {
+            long candidates = candidates(once, row, w, depth);
+            while (candidates != 0 && total <= limit) {
+                long bit = candidates & -candidates;
+                candidates ^= bit;
+                int next = (w << 6) | Long.numberOfTrailingZeros(bit);
+                int nextEnergy = energy + energyRequire[next];
+                if (nextEnergy < 0) continue;
+                if ((twice[w] & bit) != 0) {
+                    twice[w] ^= bit;
+                    total += count(state, next, nextEnergy, depth - 1, limit - total);
+                    twice[w] |= bit;
+                } else {
+                    once[w] ^= bit;
+                    total += count(state, next, nextEnergy, depth - 1, limit - total);
+                    once[w] |= bit;
+                }
+            }
+        }
+        return total;
+    }
+
+    private boolean find(State state, int last, int energy, int depth, int[] path) {
+        if (depth == 0) {
+            return true;
+        }
+        long[] once = state.once;
+        long[] twice = state.twice;
+        int row = last * words;
+        int position = this.depth - depth;
+        for (int w = 0; w < words; w++) {
+            long candidates = candidates(once, row, w, depth);
+            while (candidates != 0) {
+                long bit = candidates & -candidates;
+                candidates ^= bit;
+                int next = (w << 6) | Long.numberOfTrailingZeros(bit);
+                int nextEnergy = energy + energyRequire[next];
+                if (nextEnergy < 0) continue;
+                path[position] = next;
+                boolean found;
+                if ((twice[w] & bit) != 0) {
+                    twice[w] ^= bit;
+                    found = find(state, next, nextEnergy, depth - 1, path);
+                    twice[w] |= bit;
+                } else {
+                    once[w] ^= bit;
+                    found = find(state, next, nextEnergy, depth - 1, path);
+                    once[w] |= bit;
+                }
+                if (found) return true;
+            }
+        }
+        return false;
+    }
+
+    static class State {
+        final long[] once;
+        final long[] twice;
+
+        State(Solver solver) {
+            once = solver.initialOnce.clone();
+            twice = solver.initialTwice.clone();
+        }
+
+        int count(int index) {
+            int w = index >>> 6;
+            long bit = 1L << index;
+            return ((once[w] & bit) != 0 ? 1 : 0) + ((twice[w] & bit) != 0 ? 1 : 0);
+        }
+
+        // 路过一次该点，返回路过前是否还需路过两次
+        boolean take(int index) {
+            int w = index >>> 6;
+            long bit = 1L << index;
+            if ((twice[w] & bit) != 0) {
+                twice[w] ^= bit;
+                return true;
+            }
+            once[w] ^= bit;
+            return false;
+        }
+
+        State(Solver solver, int[] pointReachCount) {
+            once = new long[solver.words];
+            twice = new long[solver.words];
+            for (int i = 0; i < pointReachCount.length; i++) {
+                if (pointReachCount[i] > 0) once[i >>> 6] |= 1L << i;
+                if (pointReachCount[i] > 1) twice[i >>> 6] |= 1L << i;
+            }
+        }
+
+        State(State state) {
+            once = state.once.clone();
+            twice = state.twice.clone();
+        }
+
+        void restore(int index, boolean twice) {
+            int w = index >>> 6;
+            long bit = 1L << index;
+            if (twice) {
+                this.twice[w] |= bit;
+            } else {
+                once[w] |= bit;
+            }
+        }
+    }
+
+    private static class CountTask extends RecursiveTask<Long> {
+        private static final long serialVersionUID = 1L;
+
+        private final Solver solver;
+        private final State state;
+        private final int last;
+        private final int energy;
+        private final int depth;
+        private final int level;
+
+        CountTask(Solver solver, State state, int last, int energy, int depth, int level) {
+            this.solver = solver;
+            this.state = state;
+            this.last = last;
+            this.energy = energy;
+            this.depth = depth;
+            this.level = level;
+        }
+
+        @Override
+        protected Long compute() {
+            if (last != -1 && (depth <= SEQUENTIAL_DEPTH || level >= MAX_SPLIT_LEVEL || getSurplusQueuedTaskCount() > MAX_SURPLUS_TASKS)) {
+                return solver.count(state, last, energy, depth);
+            }
+            List<CountTask> tasks = new ArrayList<>();
+            if (last == -1) {
+                // 首步
+                if (solver.start != -1) {
+                    tasks.add(child(solver.start, solver.energyRequire[solver.start]));
+                } else {
+                    for (int i = 0; i < solver.size; i++) {
+                        if (solver.canStartAt(i)) {
+                            tasks.add(child(i, solver.energyRequire[i]));
+                        }
+                    }
+                }
+            } else {
+                int row = last * solver.words;
+                for (int w = 0; w < solver.words; w++) {
+                    long candidates = solver.candidates(state.once, row, w, depth);
+                    while (candidates != 0) {
+                        long bit = candidates & -candidates;
+                        candidates ^= bit;
+                        int next = (w << 6) | Long.numberOfTrailingZeros(bit);
+                        int nextEnergy = energy + solver.energyRequire[next];
+                        if (nextEnergy < 0) continue;
+                        tasks.add(child(next, nextEnergy));
+                    }
+                }
+            }
+            invokeAll(tasks);
+            long total = 0;
+            for (CountTask task : tasks) {
+                total += task.join();
+            }
+            return total;
+        }
+
+        private CountTask child(int next, int nextEnergy) {
+            State child = new State(state);
+            child.take(next);
+            return new CountTask(solver, child, next, nextEnergy, depth - 1, level + 1);
+        }
+    }
+}
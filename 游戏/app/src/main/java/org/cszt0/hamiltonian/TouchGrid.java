@@ -0,0 +1,79 @@
+package org.cszt0.hamiltonian;
+
+/**
+ * 按像素坐标划分的均匀网格，用于触摸点的命中检测。
+ * 网格边长为点半径的两倍，因此一次查询最多检查 2x2 个格子。
+ */
+public class TouchGrid {
+
+    private final float[] pointX;
+    private final float[] pointY;
+    private final float radius;
+    private final float cellSize;
+    private final int columns;
+    private final int rows;
+    // 第 i 个格子中的点为 cellItems[cellStart[i] .. cellStart[i + 1])，按下标升序
+    private final int[] cellStart;
+    private final int[] cellItems;
+
+    public TouchGrid(float[] pointX, float[] pointY, int count, float width, float height, float radius) {
+        this.pointX = pointX;
+        this.pointY = pointY;
+        this.radius = radius;
+        cellSize = Math.max(radius * 2, 1);
+        columns = (int) (width / cellSize) + 1;
+        rows = (int) (height / cellSize) + 1;
+        cellStart = new int[columns * rows + 1];
+        cellItems = new int[count];
+        int[] cellOf = new int[count];
+        for (int i = 0; i < count; i++) {
+            cellOf[i] = cell(column(pointX[i]), row(pointY[i]));
+            cellStart[cellOf[i] + 1]++;
+        }
+        for (int i = 0; i < columns * rows; i++) {
+            cellStart[i + 1] += cellStart[i];
+        }
+        int[] fill = new int[columns * rows];
+        System.arraycopy(cellStart, 0, fill, 0, fill.length);
+        for (int i = 0; i < count; i++) {
+            cellItems[fill[cellOf[i]]++] = i;
+        }
+    }
+
+    /**
+     * 返回半径范围内下标最小的点，没有时返回 -1
+     */
+    public int find(float x, float y) {
+        float r2 = radius * radius;
+        int result = -1;
+        int column1 = column(x + radius);
+        int row1 = row(y + radius);
+        for (int row = row(y - radius); row <= row1; row++) {
+            for (int column = column(x - radius); column <= column1; column++) {
+                int cell = cell(column, row);
+                for (int i = cellStart[cell]; i < cellStart[cell + 1]; i++) {
+                    int index = cellItems[i];
+                    if (result != -1 && index > result) break;
+                    float dx = x - pointX[index], dy = y - pointY[index];
+                    if (dx * dx + dy * dy < r2) {
+                        result = index;
+                        break;
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    private int column(float x) {
+        return Math.max(0, Math.min(columns - 1, (int) (x / cellSize)));
+    }
+
+    private int row(float y) {
+        return Math.max(0, Math.min(rows - 1, (int) (y / cellSize)));
+    }
+
+    private int cell(int column, int row) {
+        return row * columns + column;
+    }
+}
@@ -0,0 +1,113 @@
+package org.cszt0.hamiltonian;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+/**
+ * 走不通的判断：小图上的几种情况，以及全部关卡上判断为走不通的局面确实没有解
+ */
+public class DeadEndDetectorTest {
+
+    @Test
+    public void finishedIsNotStuck() {
+        DeadEndDetector detector = detector(TestGraphs.path(2));
+        detector.update(0, 0);
+        detector.update(1, 0);
+        assertFalse(detector.isStuck(1, 0));
+    }
+
+    @Test
+    public void tooManyEndpoints() {
+        // 从中间出发，两端都只能作为最后一步
+        DeadEndDetector detector = detector(TestGraphs.path(3));
+        detector.update(1, 0);
+        assertTrue(detector.isStuck(1, 2));
+
+        detector = detector(TestGraphs.path(3));
+        detector.update(0, 0);
+        assertFalse(detector.isStuck(0, 2));
+    }
+
+    @Test
+    public void cutOff() {
+        // 0 -> 1 <- 2：走到 1 之后到不了 2
+        Graph graph = TestGraphs.points(3);
+        graph.edgeList.add(TestGraphs.edge(0, 1, Graph.Edge.Direct.A2B));
+        graph.edgeList.add(TestGraphs.edge(2, 1, Graph.Edge.Direct.A2B));
+        DeadEndDetector detector = detector(graph);
+        detector.update(0, 0);
+        detector.update(1, 0);
+        assertTrue(detector.isStuck(1, 1));
+    }
+
+    @Test
+    public void articulation() {
+        // 星形：中心 0，叶子 1、2、3；从叶子出发后中心只能穿过一次，剩下两片
+        Graph graph = TestGraphs.points(4);
+        for (int i = 1; i < 4; i++) {
+            graph.edgeList.add(TestGraphs.edge(0, i, Graph.Edge.Direct.None));
+        }
+        DeadEndDetector detector = detector(graph);
+        detector.update(1, 0);
+        assertTrue(detector.isStuck(1, 3));
+
+        // 中心可以路过两次时能走完
+        graph.pointList.get(0).isTwice = true;
+        detector = detector(graph);
+        detector.update(1, 0);
+        assertFalse(detector.isStuck(1, 4));
+    }
+
+    @Test
+    public void shippedLevels_stuckHasNoSolution() throws IOException {
+        long stuckStates = 0;
+        for (File file : TestGraphs.levelFiles()) {
+            Search search = new Search(new Level(TestGraphs.read(file)));
+            search.run(false);
+            assertEquals(file.getPath() + " 判断为走不通的局面仍有解", 0, search.stuckSolutions);
+            stuckStates += search.stuckStates;
+        }
+        assertTrue(stuckStates > 0);
+    }
+
+    private static DeadEndDetector detector(Graph graph) {
+        Level level = new Level(graph);
+        return new DeadEndDetector(level.adjacency, level.pointReachCount, level.end);
+    }
+
+    /**
+     * 按 GameState 的规则搜索全部走法，在走不通的局面也继续展开，以确认这些局面确实没有解
+     */
+    private static class Search {
+        final GameState state;
+        final int size;
+        long stuckStates;
+        long stuckSolutions;
+
+        Search(Level level) {
+            state = new GameState(level);
+            size = level.graph.pointList.size();
+        }
+
+        void run(boolean belowStuck) {
+            if (!belowStuck && state.isStuck()) {
+                stuckStates++;
+                belowStuck = true;
+            }
+            if (state.isFinished()) {
+                if (belowStuck) stuckSolutions++;
+                return;
+            }
+            for (int i = 0; i < size; i++) {
+                if (state.tryMove(i)) {
+                    run(belowStuck);
+                    state.undo();
+                }
+            }
+        }
+    }
+}
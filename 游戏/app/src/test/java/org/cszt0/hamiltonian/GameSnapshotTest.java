@@ -0,0 +1,70 @@
+package org.cszt0.hamiltonian;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * 存档的变长整数编码
+ */
+public class GameSnapshotTest {
+
+    @Test
+    public void roundTrip() throws IOException {
+        int[] road = {0, 127, 128, 16383, 16384, Integer.MAX_VALUE, 3};
+        GameSnapshot snapshot = new GameSnapshot(12, 300, 1L << 40, road);
+        GameSnapshot decoded = GameSnapshot.decode(snapshot.encode());
+        assertEquals(12, decoded.chapter);
+        assertEquals(300, decoded.checkpoint);
+        assertEquals(1L << 40, decoded.elapsed);
+        assertArrayEquals(road, decoded.road);
+    }
+
+    @Test
+    public void roundTrip_emptyRoad() throws IOException {
+        GameSnapshot decoded = GameSnapshot.decode(new GameSnapshot(1, 1, 0, new int[0]).encode());
+        assertEquals(0, decoded.elapsed);
+        assertEquals(0, decoded.road.length);
+    }
+
+    @Test
+    public void encode_smallValuesUseOneByte() {
+        // 版本、章节、关卡、用时、路线长度与 3 个点各占一个字节
+        assertEquals(8, new GameSnapshot(1, 2, 100, new int[]{0, 1, 2}).encode().length);
+    }
+
+    @Test
+    public void truncated() {
+        byte[] data = new GameSnapshot(2, 5, 123456789, new int[]{4, 200, 1, 70000}).encode();
+        for (int length = 0; length < data.length; length++) {
+            try {
+                GameSnapshot.decode(Arrays.copyOf(data, length));
+                fail("截断到 " + length + " 字节时应当失败");
+            } catch (IOException expected) {
+                // 存档已损坏
+            }
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void unknownVersion() throws IOException {
+        byte[] data = new GameSnapshot(1, 1, 0, new int[]{0}).encode();
+        data[0] = 2;
+        GameSnapshot.decode(data);
+    }
+
+    @Test(expected = IOException.class)
+    public void roadLengthTooLarge() throws IOException {
+        // 路线长度 0x7fffffff，但后面没有数据
+        GameSnapshot.decode(new byte[]{1, 1, 1, 0, (byte) 0xff, (byte) 0xff, (byte) 0xff, (byte) 0xff, 0x07});
+    }
+
+    @Test(expected = IOException.class)
+    public void intOverflow() throws IOException {
+        // 章节为 2^31
+        GameSnapshot.decode(new byte[]{1, (byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0x80, 0x08, 1, 0, 0});
+    }
+}
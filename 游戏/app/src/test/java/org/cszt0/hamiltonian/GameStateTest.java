@@ -0,0 +1,227 @@
+package org.cszt0.hamiltonian;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * GameState 的走法规则、撤销与重放，并用全部关卡对照 Solver
+ */
+public class GameStateTest {
+
+    @Test
+    public void firstMoveMustBeStart() {
+        Graph graph = TestGraphs.path(3);
+        graph.pointList.get(1).isStart = true;
+        GameState state = new GameState(new Level(graph));
+        assertFalse(state.canMove(0));
+        assertFalse(state.tryMove(2));
+        assertEquals(0, state.getRoadLength());
+        assertTrue(state.tryMove(1));
+        assertEquals(1, state.lastPoint());
+    }
+
+    @Test
+    public void endOnlyAsLastStep() {
+        Graph graph = TestGraphs.path(3);
+        graph.pointList.get(2).isEnd = true;
+        GameState state = new GameState(new Level(graph));
+        assertFalse(state.canMove(2));
+        assertTrue(state.tryMove(0));
+        assertTrue(state.tryMove(1));
+        assertFalse(state.isFinished());
+        assertTrue(state.tryMove(2));
+        assertTrue(state.isFinished());
+        assertFalse(state.isStuck());
+        assertArrayEquals(new int[]{0, 1, 2}, state.getRoad());
+    }
+
+    @Test
+    public void onlyAlongEdges() {
+        Graph graph = TestGraphs.path(3);
+        GameState state = new GameState(new Level(graph));
+        assertTrue(state.tryMove(0));
+        assertFalse(state.canMove(2));
+        assertFalse(state.canMove(0));
+        assertFalse(state.canMove(-1));
+        assertFalse(state.canMove(3));
+        assertTrue(state.tryMove(1));
+        assertTrue(state.isEdgeUsed(0));
+        assertFalse(state.isEdgeUsed(1));
+    }
+
+    @Test
+    public void direction() {
+        Graph graph = TestGraphs.path(2);
+        graph.edgeList.get(0).direct = Graph.Edge.Direct.B2A;
+        GameState state = new GameState(new Level(graph));
+        assertTrue(state.tryMove(0));
+        assertFalse(state.canMove(1));
+        state.undo();
+        assertTrue(state.tryMove(1));
+        assertTrue(state.tryMove(0));
+        assertTrue(state.isFinished());
+    }
+
+    @Test
+    public void energy() {
+        Graph graph = TestGraphs.path(3);
+        graph.pointList.get(0).energy = 1;
+        graph.pointList.get(1).energy = -2;
+        graph.pointList.get(2).energy = 1;
+        GameState state = new GameState(new Level(graph));
+        // 第一步不能是负能量的点
+        assertFalse(state.canMove(1));
+        assertTrue(state.tryMove(0));
+        assertEquals(1, state.getEnergy());
+        assertFalse(state.canMove(1));
+        state.undo();
+        assertEquals(0, state.getEnergy());
+        assertTrue(state.tryMove(2));
+        assertFalse(state.canMove(1));
+    }
+
+    @Test
+    public void twice() {
+        Graph graph = TestGraphs.path(3);
+        graph.pointList.get(1).isTwice = true;
+        GameState state = new GameState(new Level(graph));
+        assertEquals(4, state.getDepth());
+        assertEquals(2, state.getReachCount(1));
+        assertTrue(state.tryMove(1));
+        assertTrue(state.tryMove(0));
+        assertTrue(state.tryMove(1));
+        assertEquals(0, state.getReachCount(1));
+        assertFalse(state.canMove(0));
+        assertTrue(state.tryMove(2));
+        assertTrue(state.isFinished());
+    }
+
+    @Test
+    public void undoRestoresState() {
+        Graph graph = TestGraphs.path(4);
+        graph.pointList.get(1).energy = 2;
+        graph.pointList.get(2).energy = -1;
+        GameState state = new GameState(new Level(graph));
+        assertFalse(state.undo());
+        assertTrue(state.tryMove(0));
+        assertTrue(state.tryMove(1));
+        assertTrue(state.tryMove(2));
+        assertEquals(1, state.getEnergy());
+        assertEquals(1, state.getDepth());
+        assertTrue(state.undo());
+        assertEquals(2, state.getEnergy());
+        assertEquals(2, state.getDepth());
+        assertEquals(1, state.getReachCount(2));
+        assertFalse(state.isEdgeUsed(1));
+        assertTrue(state.isEdgeUsed(0));
+        assertEquals(1, state.lastPoint());
+        state.reset();
+        assertEquals(0, state.getRoadLength());
+        assertEquals(-1, state.lastPoint());
+        assertEquals(4, state.getDepth());
+        assertEquals(0, state.getEnergy());
+        assertFalse(state.isEdgeUsed(0));
+        assertArrayEquals(new int[]{1, 1, 1, 1}, state.copyReachCount());
+    }
+
+    @Test
+    public void stuck() {
+        // 星形：中心 0，叶子 1、2、3，无法走完
+        Graph graph = new Graph();
+        for (int i = 0; i < 4; i++) {
+            graph.pointList.add(TestGraphs.point(i, i, 0, 0, false, false, false));
+        }
+        for (int i = 1; i < 4; i++) {
+            graph.edgeList.add(TestGraphs.edge(0, i, Graph.Edge.Direct.None));
+        }
+        GameState state = new GameState(new Level(graph));
+        assertTrue(state.tryMove(1));
+        assertTrue(state.tryMove(0));
+        assertTrue(state.tryMove(2));
+        assertTrue(state.isStuck());
+        assertFalse(state.canMove(3));
+        state.reset();
+        assertFalse(state.isStuck());
+    }
+
+    @Test
+    public void restore() {
+        Graph graph = TestGraphs.path(4);
+        GameState played = new GameState(new Level(graph));
+        for (int index : new int[]{1, 0}) {
+            assertTrue(played.tryMove(index));
+        }
+        GameState restored = new GameState(new Level(graph));
+        assertTrue(restored.tryMove(3));
+        restored.restore(played.getRoad());
+        assertArrayEquals(played.getRoad(), restored.getRoad());
+        assertArrayEquals(played.copyReachCount(), restored.copyReachCount());
+        assertEquals(played.getDepth(), restored.getDepth());
+        assertEquals(played.isStuck(), restored.isStuck());
+        assertTrue(restored.isEdgeUsed(0));
+        assertFalse(restored.isEdgeUsed(2));
+
+        // 不符合关卡的路线停在出错的那一步
+        restored.restore(new int[]{0, 1, 1, 2});
+        assertArrayEquals(new int[]{0, 1}, restored.getRoad());
+        restored.restore(new int[]{0, 9});
+        assertArrayEquals(new int[]{0}, restored.getRoad());
+    }
+
+    @Test
+    public void shippedLevels_searchMatchesSolver() throws IOException {
+        for (File file : TestGraphs.levelFiles()) {
+            Graph graph = TestGraphs.read(file);
+            GameSearch search = new GameSearch(new Level(graph));
+            search.run();
+            assertEquals(file.getPath(), new Solver(graph).countSolutions(), search.solutions);
+        }
+    }
+
+    @Test
+    public void shippedLevels_solutionReplays() throws IOException {
+        for (File file : TestGraphs.levelFiles()) {
+            Graph graph = TestGraphs.read(file);
+            int[] path = new Solver(graph).findSolution();
+            assertNotNull(file.getPath(), path);
+            GameState state = new GameState(new Level(graph));
+            for (int index : path) {
+                assertTrue(file.getPath() + " " + Arrays.toString(path), state.tryMove(index));
+                assertFalse(file.getPath() + " " + Arrays.toString(path), state.isStuck());
+            }
+            assertTrue(file.getPath(), state.isFinished());
+        }
+    }
+
+    /**
+     * 按 GameState 的规则搜索全部走法，与 LevelIndexer 相同
+     */
+    static class GameSearch {
+        final GameState state;
+        final int size;
+        long solutions;
+
+        GameSearch(Level level) {
+            state = new GameState(level);
+            size = level.graph.pointList.size();
+        }
+
+        void run() {
+            if (state.isFinished()) {
+                solutions++;
+                return;
+            }
+            for (int i = 0; i < size; i++) {
+                if (state.tryMove(i)) {
+                    run();
+                    state.undo();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package org.cszt0.hamiltonian;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * 关卡文件 v1 / v2 的读写
+ */
+public class GraphTest {
+
+    @Test
+    public void version1_roundTrip() throws IOException {
+        Graph graph = sample();
+        Graph read = Graph.readFromBuffer(ByteBuffer.wrap(write(graph, Graph.VERSION_1)));
+        assertSameGraph(graph, read);
+        assertTrue(read.metadata.isEmpty());
+    }
+
+    @Test
+    public void version2_roundTrip() throws IOException {
+        Graph graph = sample();
+        graph.metadata.put("author", "cszt0");
+        graph.metadata.put("名称", "测试");
+        Graph read = Graph.readFromBuffer(ByteBuffer.wrap(write(graph, Graph.VERSION_2)));
+        assertSameGraph(graph, read);
+        assertEquals(graph.metadata, read.metadata);
+    }
+
+    @Test
+    public void version2_largeValues() throws IOException {
+        Graph graph = new Graph();
+        for (int i = 0; i < 300; i++) {
+            graph.pointList.add(TestGraphs.point(i, -i * 1000, i * 1000, i % 2 == 0 ? 1000 : -1000, false, false, false));
+        }
+        for (int i = 1; i < 300; i++) {
+            graph.edgeList.add(TestGraphs.edge(i - 1, i, Graph.Edge.Direct.values()[i % 3]));
+        }
+        assertSameGraph(graph, Graph.readFromBuffer(ByteBuffer.wrap(write(graph, Graph.VERSION_2))));
+    }
+
+    @Test
+    public void readFromBuffer_keepsPositionAndOrder() throws IOException {
+        byte[] bytes = write(sample(), Graph.VERSION_2);
+        ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length + 7);
+        buffer.position(3);
+        buffer.put(bytes);
+        buffer.limit(3 + bytes.length).position(3);
+        assertSameGraph(sample(), Graph.readFromBuffer(buffer));
+        assertEquals(3, buffer.position());
+        assertEquals(ByteOrder.BIG_ENDIAN, buffer.order());
+    }
+
+    @Test
+    public void truncated() throws IOException {
+        Graph graph = sample();
+        graph.metadata.put("author", "cszt0");
+        for (int version : new int[]{Graph.VERSION_1, Graph.VERSION_2}) {
+            byte[] bytes = write(graph, version);
+            for (int length = 0; length < bytes.length; length++) {
+                try {
+                    Graph.readFromBuffer(ByteBuffer.wrap(bytes, 0, length));
+                    fail("v" + version + " 截断到 " + length + " 字节时应当失败");
+                } catch (EOFException expected) {
+                    // 截断时报告文件不完整
+                } catch (IOException e) {
+                    fail("v" + version + " 截断到 " + length + " 字节：" + e);
+                }
+            }
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void unknownVersion() throws IOException {
+        byte[] bytes = write(sample(), Graph.VERSION_2);
+        ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).putShort(4, (short) 3);
+        Graph.readFromBuffer(ByteBuffer.wrap(bytes));
+    }
+
+    @Test(expected = IOException.class)
+    public void unknownDirection() throws IOException {
+        byte[] bytes = write(sample(), Graph.VERSION_1);
+        bytes[bytes.length - 1] = 3;
+        Graph.readFromBuffer(ByteBuffer.wrap(bytes));
+    }
+
+    @Test(expected = IOException.class)
+    public void edgeOutOfRange() throws IOException {
+        byte[] bytes = write(sample(), Graph.VERSION_1);
+        bytes[bytes.length - 3] = 3;
+        Graph.readFromBuffer(ByteBuffer.wrap(bytes));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void version1_tooManyEdges() throws IOException {
+        Graph graph = new Graph();
+        graph.pointList.add(TestGraphs.point(0, 0, 0, 0, false, false, false));
+        graph.pointList.add(TestGraphs.point(1, 0, 0, 0, false, false, false));
+        for (int i = 0; i < 256; i++) {
+            graph.edgeList.add(TestGraphs.edge(0, 1, Graph.Edge.Direct.None));
+        }
+        write(graph, Graph.VERSION_1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void writeUnknownVersion() throws IOException {
+        write(sample(), 3);
+    }
+
+    // 三个点、每种方向各一条边，包含起点、终点、路过两次与正负能量
+    static Graph sample() {
+        Graph graph = new Graph();
+        graph.pointList.add(TestGraphs.point(0, 100, -200, 2, true, false, false));
+        graph.pointList.add(TestGraphs.point(1, 300, 400, -1, false, false, true));
+        graph.pointList.add(TestGraphs.point(2, -500, 600, 0, false, true, false));
+        graph.edgeList.add(TestGraphs.edge(0, 1, Graph.Edge.Direct.None));
+        graph.edgeList.add(TestGraphs.edge(1, 2, Graph.Edge.Direct.A2B));
+        graph.edgeList.add(TestGraphs.edge(0, 2, Graph.Edge.Direct.B2A));
+        return graph;
+    }
+
+    static byte[] write(Graph graph, int version) throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        graph.writeToStream(outputStream, version);
+        return outputStream.toByteArray();
+    }
+
+    static void assertSameGraph(Graph expected, Graph actual) {
+        assertEquals(expected.pointList.size(), actual.pointList.size());
+        assertEquals(expected.edgeList.size(), actual.edgeList.size());
+        for (int i = 0; i < expected.pointList.size(); i++) {
+            Graph.Point a = expected.pointList.get(i), b = actual.pointList.get(i);
+            assertEquals(i, b.index);
+            assertArrayEquals("点 " + i,
+                    new int[]{a.x, a.y, a.energy, a.isStart ? 1 : 0, a.isEnd ? 1 : 0, a.isTwice ? 1 : 0},
+                    new int[]{b.x, b.y, b.energy, b.isStart ? 1 : 0, b.isEnd ? 1 : 0, b.isTwice ? 1 : 0});
+        }
+        for (int i = 0; i < expected.edgeList.size(); i++) {
+            Graph.Edge a = expected.edgeList.get(i), b = actual.edgeList.get(i);
+            assertEquals("边 " + i, Arrays.asList(a.pointA, a.pointB, a.direct), Arrays.asList(b.pointA, b.pointB, b.direct));
+        }
+    }
+}
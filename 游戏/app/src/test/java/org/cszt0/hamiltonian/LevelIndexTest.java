@@ -0,0 +1,108 @@
+package org.cszt0.hamiltonian;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * levels.index 的读取，索引按 LevelIndexer 的格式在测试中生成
+ */
+public class LevelIndexTest {
+
+    @Test
+    public void get() throws IOException {
+        LevelIndex index = new LevelIndex(ByteBuffer.wrap(index(
+                new long[]{0, 0, 1, 10},
+                new long[]{1, 1, 2, 20},
+                new long[]{1, 2, 3, 30},
+                new long[]{1, 5, 4, 40},
+                new long[]{3, 1, 5, 50})));
+        assertEquals(1, index.get(0, 0).solutionCount);
+        assertEquals(20, index.get(1, 1).searchNodes);
+        assertEquals(3, index.get(1, 2).solutionCount);
+        // 关卡号不连续时二分查找
+        assertEquals(4, index.get(1, 5).solutionCount);
+        assertEquals(5, index.get(3, 1).solutionCount);
+        assertNull(index.get(1, 3));
+        assertNull(index.get(2, 1));
+        assertNull(index.get(4, 1));
+        assertNull(index.get(-1, 1));
+
+        LevelIndex.Entry entry = index.get(1, 2);
+        assertEquals(1.5f, entry.averageBranching, 0);
+        assertEquals(7, entry.pointCount);
+        assertEquals(9, entry.edgeCount);
+        assertEquals(2, entry.energyPointCount);
+        assertEquals(3, entry.energyGain);
+        assertEquals(65535, entry.energyCost);
+        assertEquals(LevelIndex.FLAG_TRUNCATED, entry.flags);
+    }
+
+    @Test
+    public void difficulty() throws IOException {
+        LevelIndex index = new LevelIndex(ByteBuffer.wrap(index(
+                new long[]{1, 1, 10, 10},
+                new long[]{1, 2, 1, 4},
+                new long[]{1, 3, 0, 15},
+                new long[]{1, 4, 1, 1L << 40})));
+        assertEquals(1, index.get(1, 1).getDifficulty());
+        assertEquals(2, index.get(1, 2).getDifficulty());
+        assertEquals(2, index.get(1, 3).getDifficulty());
+        assertEquals(5, index.get(1, 4).getDifficulty());
+    }
+
+    @Test
+    public void empty() throws IOException {
+        assertNull(new LevelIndex(ByteBuffer.wrap(index())).get(1, 1));
+    }
+
+    @Test
+    public void truncated() {
+        byte[] bytes = index(new long[]{1, 1, 1, 1}, new long[]{1, 2, 1, 1});
+        for (int length = 0; length < bytes.length; length++) {
+            try {
+                new LevelIndex(ByteBuffer.wrap(Arrays.copyOf(bytes, length)));
+                fail("截断到 " + length + " 字节时应当失败");
+            } catch (IOException expected) {
+                // 索引不完整
+            }
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void unknownVersion() throws IOException {
+        byte[] bytes = index();
+        ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).putShort(4, (short) (LevelIndex.VERSION + 1));
+        new LevelIndex(ByteBuffer.wrap(bytes));
+    }
+
+    @Test(expected = IOException.class)
+    public void unknownEntrySize() throws IOException {
+        byte[] bytes = index();
+        ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).putShort(6, (short) (LevelIndex.ENTRY_SIZE + 4));
+        new LevelIndex(ByteBuffer.wrap(bytes));
+    }
+
+    @Test(expected = IOException.class)
+    public void negativeChapter() throws IOException {
+        new LevelIndex(ByteBuffer.wrap(index(new long[]{-1, 1, 1, 1})));
+    }
+
+    // 每项为 {章节, 关卡, 解的个数, 搜索节点数}，其余字段取固定值
+    private static byte[] index(long[]... entries) {
+        ByteBuffer buffer = ByteBuffer.allocate(LevelIndex.HEADER_SIZE + entries.length * LevelIndex.ENTRY_SIZE)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(LevelIndex.MAGIC).putShort((short) LevelIndex.VERSION).putShort((short) LevelIndex.ENTRY_SIZE).putInt(entries.length);
+        for (long[] entry : entries) {
+            buffer.putInt((int) entry[0]).putInt((int) entry[1]).putLong(entry[2]).putLong(entry[3]);
+            buffer.putFloat(1.5f).putShort((short) 7).putShort((short) 9);
+            buffer.putShort((short) 2).putShort((short) 3).putShort((short) 0xffff).putShort((short) LevelIndex.FLAG_TRUNCATED);
+        }
+        return buffer.array();
+    }
+}
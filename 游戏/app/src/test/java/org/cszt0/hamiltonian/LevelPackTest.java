@@ -0,0 +1,98 @@
+package org.cszt0.hamiltonian;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * levels.pack 的读取，包按 app/build.gradle 中 packLevels 的格式在测试中生成
+ */
+public class LevelPackTest {
+
+    @Test
+    public void readLevels() throws IOException {
+        byte[] hello = GraphTest.write(GraphTest.sample(), Graph.VERSION_1);
+        byte[] level = GraphTest.write(GraphTest.sample(), Graph.VERSION_2);
+        LevelPack pack = new LevelPack(ByteBuffer.wrap(pack(
+                new int[]{0, 0}, hello,
+                new int[]{1, 1}, level,
+                new int[]{1, 2}, hello,
+                new int[]{3, 2}, level)));
+
+        assertArrayEquals(new int[]{1, 3}, pack.getChapters());
+        assertEquals(2, pack.getCheckpointCount(1));
+        assertEquals(0, pack.getCheckpointCount(2));
+        assertEquals(1, pack.getCheckpointCount(3));
+        assertEquals(LevelPack.FLAG_VERSION_2, pack.getFlags(1, 1));
+        assertEquals(0, pack.getFlags(1, 2));
+        assertNull(pack.getLevel(1, 3));
+        assertNull(pack.getLevel(3, 1));
+        assertNull(pack.getLevel(4, 1));
+
+        ByteBuffer buffer = pack.getLevel(3, 2);
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        assertArrayEquals(level, bytes);
+        GraphTest.assertSameGraph(GraphTest.sample(), pack.readGraph(0, 0));
+        GraphTest.assertSameGraph(GraphTest.sample(), pack.readGraph(1, 1));
+    }
+
+    @Test(expected = IOException.class)
+    public void readMissingLevel() throws IOException {
+        new LevelPack(ByteBuffer.wrap(pack())).readGraph(1, 1);
+    }
+
+    @Test
+    public void truncated() throws IOException {
+        byte[] level = GraphTest.write(GraphTest.sample(), Graph.VERSION_1);
+        byte[] bytes = pack(new int[]{1, 1}, level, new int[]{1, 2}, level);
+        for (int length = 0; length < bytes.length; length++) {
+            try {
+                new LevelPack(ByteBuffer.wrap(Arrays.copyOf(bytes, length)));
+                fail("截断到 " + length + " 字节时应当失败");
+            } catch (IOException expected) {
+                // 目录或关卡内容不完整
+            }
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void unknownVersion() throws IOException {
+        byte[] bytes = pack();
+        ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).putShort(4, (short) 2);
+        new LevelPack(ByteBuffer.wrap(bytes));
+    }
+
+    @Test(expected = IOException.class)
+    public void notAPack() throws IOException {
+        new LevelPack(ByteBuffer.wrap(GraphTest.write(GraphTest.sample(), Graph.VERSION_1)));
+    }
+
+    // 参数依次为 {章节, 关卡} 与关卡文件内容，按 (章节, 关卡) 升序
+    private static byte[] pack(Object... levels) {
+        int count = levels.length / 2;
+        int offset = 12 + count * 20;
+        int size = offset;
+        for (int i = 0; i < count; i++) {
+            size += ((byte[]) levels[i * 2 + 1]).length;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(0x504c4d48).putShort((short) 1).putShort((short) 0).putInt(count);
+        for (int i = 0; i < count; i++) {
+            int[] key = (int[]) levels[i * 2];
+            byte[] bytes = (byte[]) levels[i * 2 + 1];
+            boolean version2 = (bytes[0] & 0xff) == 0x89;
+            buffer.putInt(key[0]).putInt(key[1]).putInt(offset).putInt(bytes.length).putInt(version2 ? LevelPack.FLAG_VERSION_2 : 0);
+            offset += bytes.length;
+        }
+        for (int i = 0; i < count; i++) {
+            buffer.put((byte[]) levels[i * 2 + 1]);
+        }
+        return buffer.array();
+    }
+}
@@ -0,0 +1,94 @@
+package org.cszt0.hamiltonian;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.*;
+
+/**
+ * Solver 在小图上的解的个数，以及全部关卡上几种求解方式（包括并行计数）的一致性
+ */
+public class SolverTest {
+
+    @Test
+    public void smallGraphs() {
+        // 路线只能从任一端走到另一端
+        assertEquals(2, new Solver(TestGraphs.path(3)).countSolutions());
+        // 起点在中间时走不完
+        Graph middleStart = TestGraphs.path(3);
+        middleStart.pointList.get(1).isStart = true;
+        assertEquals(0, new Solver(middleStart).countSolutions());
+        // 有向环：从任一点出发只有一种走法
+        Graph cycle = TestGraphs.points(3);
+        for (int i = 0; i < 3; i++) {
+            cycle.edgeList.add(TestGraphs.edge(i, (i + 1) % 3, Graph.Edge.Direct.A2B));
+        }
+        assertEquals(3, new Solver(cycle).countSolutions());
+        // 完全图：点的任一排列都是解
+        Graph complete = TestGraphs.points(4);
+        for (int i = 0; i < 4; i++) {
+            for (int j = i + 1; j < 4; j++) {
+                complete.edgeList.add(TestGraphs.edge(i, j, Graph.Edge.Direct.None));
+            }
+        }
+        assertEquals(24, new Solver(complete).countSolutions());
+    }
+
+    @Test
+    public void shippedLevels_countsAgree() throws IOException {
+        for (File file : TestGraphs.levelFiles()) {
+            Graph graph = TestGraphs.read(file);
+            Solver solver = new Solver(graph);
+            long count = solver.countSolutions();
+            assertTrue(file.getPath(), count > 0);
+            assertEquals(file.getPath(), count, solver.countSolutions(Long.MAX_VALUE));
+            assertEquals(file.getPath(), count, solver.countSolutions(count));
+            // 有上限时超过上限即停止，返回值大于上限
+            if (count > 1) {
+                assertTrue(file.getPath(), solver.countSolutions(count - 1) > count - 1);
+            }
+        }
+    }
+
+    @Test
+    public void shippedLevels_parallelCountsAgree() throws IOException {
+        // 线程数少于任务数，检查任务窃取与合并
+        ForkJoinPool pool = new ForkJoinPool(2);
+        try {
+            for (File file : TestGraphs.levelFiles()) {
+                Solver solver = new Solver(TestGraphs.read(file));
+                long count = solver.countSolutions();
+                assertEquals(file.getPath(), count, solver.countSolutionsParallel(pool));
+                assertEquals(file.getPath(), count, solver.countSolutionsParallel());
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void shippedLevels_findSolution() throws IOException {
+        for (File file : TestGraphs.levelFiles()) {
+            Graph graph = TestGraphs.read(file);
+            int[] path = new Solver(graph).findSolution();
+            assertNotNull(file.getPath(), path);
+            assertEquals(file.getPath(), new Level(graph).depth, path.length);
+        }
+    }
+
+    @Test
+    public void unsolvable() {
+        // 0 -> 1 <- 2，没有经过所有点的路线
+        Graph graph = TestGraphs.points(3);
+        graph.edgeList.add(TestGraphs.edge(0, 1, Graph.Edge.Direct.A2B));
+        graph.edgeList.add(TestGraphs.edge(2, 1, Graph.Edge.Direct.A2B));
+        Solver solver = new Solver(graph);
+        assertEquals(0, solver.countSolutions());
+        assertEquals(0, solver.countSolutions(10));
+        assertEquals(0, solver.countSolutionsParallel());
+        assertNull(solver.findSolution());
+    }
+}
@@ -0,0 +1,90 @@
+package org.cszt0.hamiltonian;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertFalse;
+
+/**
+ * 测试共用的图与关卡，tools 的测试也会编译本类
+ */
+final class TestGraphs {
+
+    // 单元测试的工作目录为 app（tools 的测试同样以 app 为工作目录）
+    static final File LEVEL_DIR = new File("src/main/levels");
+
+    private TestGraphs() {
+    }
+
+    static Graph.Point point(int index, int x, int y, int energy, boolean isStart, boolean isEnd, boolean isTwice) {
+        Graph.Point point = new Graph.Point();
+        point.index = index;
+        point.x = x;
+        point.y = y;
+        point.energy = energy;
+        point.isStart = isStart;
+        point.isEnd = isEnd;
+        point.isTwice = isTwice;
+        return point;
+    }
+
+    static Graph.Edge edge(int pointA, int pointB, Graph.Edge.Direct direct) {
+        Graph.Edge edge = new Graph.Edge();
+        edge.pointA = pointA;
+        edge.pointB = pointB;
+        edge.direct = direct;
+        return edge;
+    }
+
+    // size 个没有边的点，排成一行
+    static Graph points(int size) {
+        Graph graph = new Graph();
+        for (int i = 0; i < size; i++) {
+            graph.pointList.add(point(i, i, 0, 0, false, false, false));
+        }
+        return graph;
+    }
+
+    // 0 - 1 - ... - (size - 1)
+    static Graph path(int size) {
+        Graph graph = points(size);
+        for (int i = 1; i < size; i++) {
+            graph.edgeList.add(edge(i - 1, i, Graph.Edge.Direct.None));
+        }
+        return graph;
+    }
+
+    /**
+     * src/main/levels 下的全部关卡文件，按路径排序
+     */
+    static List<File> levelFiles() {
+        List<File> files = new ArrayList<>();
+        collect(LEVEL_DIR, files);
+        assertFalse("找不到关卡：" + LEVEL_DIR.getAbsolutePath(), files.isEmpty());
+        return files;
+    }
+
+    private static void collect(File dir, List<File> files) {
+        File[] children = dir.listFiles();
+        if (children == null) return;
+        Arrays.sort(children);
+        for (File child : children) {
+            if (child.isDirectory()) {
+                collect(child, files);
+            } else if (child.getName().endsWith(".dat")) {
+                files.add(child);
+            }
+        }
+    }
+
+    static Graph read(File file) throws IOException {
+        try (InputStream inputStream = new FileInputStream(file)) {
+            return Graph.readFromStream(inputStream);
+        }
+    }
+}
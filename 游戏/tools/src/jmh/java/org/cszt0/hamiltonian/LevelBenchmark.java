@@ -0,0 +1,151 @@
+package org.cszt0.hamiltonian;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 对每个关卡测量计数全部解、找第一个解、按游戏规则重放一个解的速度，以及 {@link GameState} 每秒的走子数。
+ * <p>
+ * level 参数：关卡目录下的相对路径（不含 .dat，如 3/7、helloworld），
+ * grid:宽x高（网格图），random:点数:种子（{@link LevelGenerator} 生成的随机图）。
+ * 关卡目录由系统属性 levels.dir 指定，gradle jmh 任务会列出全部关卡
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LevelBenchmark {
+
+    @Param({"helloworld", "grid:5x5", "random:40:1"})
+    String level;
+
+    // moves 每次调用的步数
+    static final int MOVES = 4096;
+
+    Level data;
+    Solver solver;
+    int[] solution;
+    GameState state;
+    // moves 在解上来回走：position 为已走的步数，forward 为方向
+    int position;
+    boolean forward;
+
+    @Setup
+    public void setup() throws IOException {
+        data = new Level(load(level));
+        solver = new Solver(data.graph);
+        solution = solver.findSolution();
+        if (solution == null) {
+            throw new IllegalStateException("关卡无解：" + level);
+        }
+        state = new GameState(data);
+        position = 0;
+        forward = true;
+    }
+
+    @Benchmark
+    public long countSolutions() {
+        return solver.countSolutions();
+    }
+
+    @Benchmark
+    public int[] findSolution() {
+        return solver.findSolution();
+    }
+
+    @Benchmark
+    public boolean replaySolution() {
+        state.reset();
+        for (int index : solution) {
+            if (!state.tryMove(index)) return false;
+        }
+        return state.isFinished();
+    }
+
+    /**
+     * 沿解向前走到终点再逐步撤销回起点，反复进行；结果为每秒的走子与撤销次数
+     */
+    @Benchmark
+    @OperationsPerInvocation(MOVES)
+    public int moves() {
+        GameState state = this.state;
+        int[] solution = this.solution;
+        int position = this.position;
+        boolean forward = this.forward;
+        for (int i = 0; i < MOVES; i++) {
+            if (forward) {
+                state.tryMove(solution[position++]);
+                forward = position != solution.length;
+            } else {
+                state.undo();
+                forward = --position == 0;
+            }
+        }
+        this.position = position;
+        this.forward = forward;
+        return state.getDepth();
+    }
+
+    static Graph load(String name) throws IOException {
+        if (name.startsWith("grid:")) {
+            String[] size = name.substring(5).split("x");
+            return grid(Integer.parseInt(size[0]), Integer.parseInt(size[1]));
+        }
+        if (name.startsWith("random:")) {
+            String[] args = name.split(":");
+            LevelGenerator generator = new LevelGenerator();
+            generator.minPoints = generator.maxPoints = Integer.parseInt(args[1]);
+            Random random = new Random(Long.parseLong(args[2]));
+            while (true) {
+                Graph graph = generator.generate(random);
+                if (new Solver(graph).findSolution() != null) return graph;
+            }
+        }
+        File file = new File(System.getProperty("levels.dir", "../app/src/main/levels"), name + ".dat");
+        try (InputStream inputStream = new FileInputStream(file)) {
+            return Graph.readFromStream(inputStream);
+        }
+    }
+
+    // 宽 x 高的网格，相邻点之间连边
+    static Graph grid(int width, int height) {
+        Graph graph = new Graph();
+        for (int i = 0; i < width * height; i++) {
+            Graph.Point point = new Graph.Point();
+            point.index = i;
+            point.x = (int) ((i % width + 1L) * 0x7fffffff / (width + 1));
+            point.y = (int) ((i / width + 1L) * 0x7fffffff / (height + 1));
+            graph.pointList.add(point);
+            if (i % width != 0) addEdge(graph, i - 1, i);
+            if (i >= width) addEdge(graph, i - width, i);
+        }
+        return graph;
+    }
+
+    private static void addEdge(Graph graph, int a, int b) {
+        Graph.Edge edge = new Graph.Edge();
+        edge.pointA = a;
+        edge.pointB = b;
+        edge.direct = Graph.Edge.Direct.None;
+        graph.edgeList.add(edge);
+    }
+}
@@ -0,0 +1,289 @@
+package org.cszt0.hamiltonian;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 关卡的规范哈希：只与谜题本身有关（点的起点、终点、路过两次、能量，边与方向），
+ * 与点的编号、坐标、边的顺序无关，同一个谜题的不同文件得到相同的哈希。
+ * <p>
+ * 先按 Weisfeiler-Lehman 方式反复用邻居的颜色细化点的颜色；颜色不能区分所有点时，
+ * 依次把同色的点单独标出后继续细化，在所有结果中取字典序最小的编码作为规范形式。
+ * 交换后图不变的两个点（如星形的叶子、孤立的点）只尝试其中一个。
+ * <p>
+ * 对称性很高的图仍可能需要很多分支，超过 {@link #NODE_LIMIT} 时改用只按颜色细化的哈希，
+ * 以 {@link #APPROXIMATE_PREFIX} 开头（见 {@link #isExact}）：同一个谜题仍得到相同的哈希，
+ * 但不同的谜题也可能相同
+ */
+public class GraphHash {
+
+    // 边相对于点的方向：无方向、出边、入边
+    private static final int UNDIRECTED = 0, OUTGOING = 1, INCOMING = 2;
+    private static final long INDIVIDUAL = 0x5bd1e9955bd1e995L;
+    // 搜索树最多展开的节点数；展开的节点数与编号无关，同一个谜题总是得到同一种哈希
+    static final int NODE_LIMIT = 4096;
+    public static final String APPROXIMATE_PREFIX = "wl:";
+
+    private final int size;
+    private final long[] initial;
+    // 压缩邻接表，kind 为上面三种方向之一
+    private final int[] start;
+    private final int[] neighbour;
+    private final int[] kind;
+    private final List<Graph.Edge> edgeList;
+    private long[] best;
+    private int nodes;
+
+    private GraphHash(Graph graph) {
+        size = graph.pointList.size();
+        edgeList = graph.edgeList;
+        initial = new long[size];
+        for (Graph.Point point : graph.pointList) {
+            initial[point.index] = mix(pointKey(point));
+        }
+        start = new int[size + 1];
+        for (Graph.Edge edge : edgeList) {
+            start[edge.pointA + 1]++;
+            start[edge.pointB + 1]++;
+        }
+        for (int i = 0; i < size; i++) {
+            start[i + 1] += start[i];
+        }
+        neighbour = new int[start[size]];
+        kind = new int[start[size]];
+        int[] fill = Arrays.copyOf(start, size);
+        for (Graph.Edge edge : edgeList) {
+            int a = edge.pointA, b = edge.pointB;
+            boolean directed = edge.direct != Graph.Edge.Direct.None;
+            boolean forward = edge.direct == Graph.Edge.Direct.A2B;
+            neighbour[fill[a]] = b;
+            kind[fill[a]++] = directed ? (forward ? OUTGOING : INCOMING) : UNDIRECTED;
+            neighbour[fill[b]] = a;
+            kind[fill[b]++] = directed ? (forward ? INCOMING : OUTGOING) : UNDIRECTED;
+        }
+    }
+
+    /**
+     * 128 位规范哈希，32 个十六进制字符；搜索超过上限时为 {@link #APPROXIMATE_PREFIX} 加上按颜色细化的哈希
+     */
+    public static String of(Graph graph) {
+        long[] form = canonicalForm(graph);
+        if (form == null) {
+            return APPROXIMATE_PREFIX + digest(new GraphHash(graph).refinedForm());
+        }
+        return digest(form);
+    }
+
+    /**
+     * 是否为规范哈希；不是时不同的谜题也可能得到相同的哈希，不能作为只属于一个谜题的键
+     */
+    public static boolean isExact(String hash) {
+        return !hash.startsWith(APPROXIMATE_PREFIX);
+    }
+
+    private static String digest(long[] form) {
+        ByteBuffer data = ByteBuffer.allocate(form.length * 8);
+        for (long value : form) {
+            data.putLong(value);
+        }
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(data.array());
+            StringBuilder builder = new StringBuilder(32);
+            for (int i = 0; i < 16; i++) {
+                builder.append(Character.forDigit((digest[i] >> 4) & 0xf, 16)).append(Character.forDigit(digest[i] & 0xf, 16));
+            }
+            return builder.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * 规范形式：点数、边数，按规范顺序的每个点，再是排序后的每条边；搜索超过上限时为 null
+     */
+    static long[] canonicalForm(Graph graph) {
+        GraphHash hash = new GraphHash(graph);
+        hash.search(hash.initial.clone());
+        return hash.nodes > NODE_LIMIT ? null : hash.best;
+    }
+
+    private void search(long[] colors) {
+        if (++nodes > NODE_LIMIT) return;
+        refine(colors);
+        // 取颜色值最小的非单点颜色类，与编号无关
+        long target = 0;
+        boolean found = false;
+        long[] sorted = colors.clone();
+        Arrays.sort(sorted);
+        for (int i = 1; i < size; i++) {
+            if (sorted[i] == sorted[i - 1]) {
+                target = sorted[i];
+                found = true;
+                break;
+            }
+        }
+        if (!found) {
+            long[] form = encode(colors);
+            if (best == null || compare(form, best) < 0) {
+                best = form;
+            }
+            return;
+        }
+        int[] tried = new int[size];
+        int triedCount = 0;
+        candidates:
+        for (int i = 0; i < size; i++) {
+            if (colors[i] != target) continue;
+            for (int j = 0; j < triedCount; j++) {
+                if (twins(tried[j], i)) continue candidates;
+            }
+            tried[triedCount++] = i;
+            long[] next = colors.clone();
+            next[i] = mix(next[i] ^ INDIVIDUAL);
+            search(next);
+            if (nodes > NODE_LIMIT) return;
+        }
+    }
+
+    // 同色且交换后图不变：除彼此外邻居与边的方向都相同，两点之间只能有无方向的边。
+    // 标出其中任何一个得到的结果相同
+    private boolean twins(int a, int b) {
+        long[] signatureA = signature(a, b);
+        long[] signatureB = signature(b, a);
+        return signatureA != null && signatureB != null && Arrays.equals(signatureA, signatureB);
+    }
+
+    // 除 other 以外的邻居与方向，排序后比较；与 other 之间有方向的边时为 null
+    private long[] signature(int index, int other) {
+        long[] result = new long[start[index + 1] - start[index]];
+        int length = 0;
+        for (int arc = start[index]; arc < start[index + 1]; arc++) {
+            if (neighbour[arc] == other) {
+                if (kind[arc] != UNDIRECTED) return null;
+                continue;
+            }
+            result[length++] = (long) neighbour[arc] * 3 + kind[arc];
+        }
+        result = Arrays.copyOf(result, length);
+        Arrays.sort(result);
+        return result;
+    }
+
+    // 只按颜色细化：排序后的颜色，再是按两端颜色排序的每条边
+    private long[] refinedForm() {
+        long[] colors = initial.clone();
+        refine(colors);
+        long[] form = new long[2 + size + edgeList.size()];
+        form[0] = size;
+        form[1] = edgeList.size();
+        long[] sorted = colors.clone();
+        Arrays.sort(sorted);
+        System.arraycopy(sorted, 0, form, 2, size);
+        long[] edges = new long[edgeList.size()];
+        for (int i = 0; i < edges.length; i++) {
+            Graph.Edge edge = edgeList.get(i);
+            long a = colors[edge.pointA], b = colors[edge.pointB];
+            int direct = edge.direct.ordinal();
+            if (a > b) {
+                long t = a;
+                a = b;
+                b = t;
+                if (direct != 0) direct = 3 - direct;
+            } else if (a == b && direct != 0) {
+                // 两端同色时无法区分方向
+                direct = 1;
+            }
+            edges[i] = mix(mix(a) + b * 3 + direct);
+        }
+        Arrays.sort(edges);
+        System.arraycopy(edges, 0, form, 2 + size, edges.length);
+        return form;
+    }
+
+    // 细化到颜色类的个数不再增加为止；新颜色包含旧颜色，颜色类只会被拆分
+    private void refine(long[] colors) {
+        long[] next = new long[size];
+        int classes = countClasses(colors);
+        while (true) {
+            for (int i = 0; i < size; i++) {
+                // 邻居颜色的多重集合用哈希之和表示，与顺序无关
+                long sum = 0;
+                for (int arc = start[i]; arc < start[i + 1]; arc++) {
+                    sum += mix(colors[neighbour[arc]] * 3 + kind[arc]);
+                }
+                next[i] = mix(colors[i] * 31 + sum);
+            }
+            int nextClasses = countClasses(next);
+            System.arraycopy(next, 0, colors, 0, size);
+            if (nextClasses == classes) return;
+            classes = nextClasses;
+        }
+    }
+
+    private int countClasses(long[] colors) {
+        long[] sorted = colors.clone();
+        Arrays.sort(sorted);
+        int classes = size == 0 ? 0 : 1;
+        for (int i = 1; i < size; i++) {
+            if (sorted[i] != sorted[i - 1]) classes++;
+        }
+        return classes;
+    }
+
+    // 颜色各不相同时按颜色排序得到点的规范编号
+    private long[] encode(long[] colors) {
+        Integer[] order = new Integer[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Long.compare(colors[a], colors[b]));
+        int[] rank = new int[size];
+        for (int i = 0; i < size; i++) {
+            rank[order[i]] = i;
+        }
+        long[] form = new long[2 + size + edgeList.size()];
+        form[0] = size;
+        form[1] = edgeList.size();
+        for (int i = 0; i < size; i++) {
+            form[2 + rank[i]] = initial[i];
+        }
+        long[] edges = new long[edgeList.size()];
+        for (int i = 0; i < edges.length; i++) {
+            Graph.Edge edge = edgeList.get(i);
+            int a = rank[edge.pointA], b = rank[edge.pointB];
+            int direct = edge.direct.ordinal();
+            if (a > b) {
+                int t = a;
+                a = b;
+                b = t;
+                if (direct != 0) direct = 3 - direct;
+            }
+            edges[i] = (long) a << 34 | (long) b << 2 | direct;
+        }
+        Arrays.sort(edges);
+        System.arraycopy(edges, 0, form, 2 + size, edges.length);
+        return form;
+    }
+
+    private static int compare(long[] a, long[] b) {
+        for (int i = 0; i < a.length; i++) {
+            if (a[i] != b[i]) return Long.compare(a[i], b[i]);
+        }
+        return 0;
+    }
+
+    private static long pointKey(Graph.Point point) {
+        long flags = (point.isStart ? 4 : 0) | (point.isEnd ? 2 : 0) | (point.isTwice ? 1 : 0);
+        return flags << 32 | (point.energy & 0xffffffffL);
+    }
+
+    // splitmix64 的混合函数
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+}
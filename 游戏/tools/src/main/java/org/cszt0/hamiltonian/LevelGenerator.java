@@ -0,0 +1,331 @@
+package org.cszt0.hamiltonian;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 随机生成关卡，按解的个数筛选后写出 v1 关卡文件。
+ * <p>
+ * 先在抖动的网格上放点，再沿一条随机路线连边保证大多数候选有解，之后补上不交叉的近邻边，
+ * 最后随机设置起点终点、两次路过、方向与能量。每个线程独立生成与求解，只在写文件时同步。
+ * 与已经生成的关卡是同一个谜题（{@link GraphHash} 相同）的候选直接跳过。
+ * <p>
+ * 参数：--count 数量 --points 最少-最多 --solutions 最少-最多 --out 目录 --seed 种子 --threads 线程数
+ * --twice 比例 --directed 比例 --energy 比例 --endpoints 比例 --extra 比例 --max-candidates 数量
+ * --cache 文件（{@link SolverCache}，多次运行之间复用解的个数）
+ */
+public class LevelGenerator {
+
+    // 坐标留出的边距，与编辑器中点的分布接近
+    private static final double MARGIN = 0.08;
+    // 每个点考虑连接的近邻数
+    private static final int NEIGHBOURS = 4;
+    // 点数上限：再多时单个候选的求解可能需要数分钟（40 个点时单线程约每分钟 26 个候选）
+    static final int MAX_POINTS = 36;
+    // v1 文件的边数上限
+    private static final int MAX_EDGES = 255;
+
+    int count = 100;
+    int minPoints = 8;
+    int maxPoints = 14;
+    long minSolutions = 1;
+    long maxSolutions = 1;
+    File outputDirectory = new File("generated");
+    long seed = System.nanoTime();
+    int threads = Runtime.getRuntime().availableProcessors();
+    double twiceRate = 0.1;
+    double directedRate = 0.15;
+    double energyRate = 0.1;
+    double endpointsRate = 0.5;
+    double extraRate = 0.6;
+    long maxCandidates = -1;
+    File cacheFile;
+
+    private final AtomicInteger accepted = new AtomicInteger();
+    private final AtomicLong candidates = new AtomicLong();
+    private final AtomicLong duplicates = new AtomicLong();
+    private final Set<String> acceptedHashes = ConcurrentHashMap.newKeySet();
+
+    public static void main(String[] args) throws Exception {
+        LevelGenerator generator = new LevelGenerator();
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            String value = args[i + 1];
+            switch (args[i]) {
+                case "--count":
+                    generator.count = Integer.parseInt(value);
+                    break;
+                case "--points":
+                    generator.minPoints = Integer.parseInt(value.split("-")[0]);
+                    generator.maxPoints = Integer.parseInt(value.contains("-") ? value.split("-")[1] : value);
+                    break;
+                case "--solutions":
+                    generator.minSolutions = Long.parseLong(value.split("-")[0]);
+                    generator.maxSolutions = Long.parseLong(value.contains("-") ? value.split("-")[1] : value);
+                    break;
+                case "--out":
+                    generator.outputDirectory = new File(value);
+                    break;
+                case "--seed":
+                    generator.seed = Long.parseLong(value);
+                    break;
+                case "--threads":
+                    generator.threads = Integer.parseInt(value);
+                    break;
+                case "--twice":
+                    generator.twiceRate = Double.parseDouble(value);
+                    break;
+                case "--directed":
+                    generator.directedRate = Double.parseDouble(value);
+                    break;
+                case "--energy":
+                    generator.energyRate = Double.parseDouble(value);
+                    break;
+                case "--endpoints":
+                    generator.endpointsRate = Double.parseDouble(value);
+                    break;
+                case "--extra":
+                    generator.extraRate = Double.parseDouble(value);
+                    break;
+                case "--max-candidates":
+                    generator.maxCandidates = Long.parseLong(value);
+                    break;
+                case "--cache":
+                    generator.cacheFile = new File(value);
+                    break;
+                default:
+                    throw new IllegalArgumentException("未知参数：" + args[i]);
+            }
+        }
+        if (generator.minPoints < 2 || generator.maxPoints > MAX_POINTS || generator.minPoints > generator.maxPoints) {
+            throw new IllegalArgumentException("点数必须在 2 到 " + MAX_POINTS + " 之间");
+        }
+        long startTime = System.nanoTime();
+        generator.run();
+        double seconds = (System.nanoTime() - startTime) / 1e9;
+        System.out.printf("生成 %d 个关卡，检查 %d 个候选（%d 个重复），用时 %.1f 秒（%.0f 个候选/分钟）%n",
+                generator.accepted.get(), generator.candidates.get(), generator.duplicates.get(), seconds,
+                generator.candidates.get() / seconds * 60);
+    }
+
+    public void run() throws InterruptedException, IOException {
+        if (!outputDirectory.isDirectory() && !outputDirectory.mkdirs()) {
+            throw new IOException("无法创建目录：" + outputDirectory);
+        }
+        long limit = maxCandidates > 0 ? maxCandidates : (long) count * 100000;
+        SolverCache cache = cacheFile == null ? null : SolverCache.open(cacheFile);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Exception> errors = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            Random random = new Random(seed * 0x9e3779b97f4a7c15L + t);
+            executor.execute(() -> {
+                try {
+                    while (accepted.get() < count && candidates.incrementAndGet() <= limit) {
+                        Graph graph = generate(random);
+                        // 不是规范哈希时不同的谜题也可能相同，这时多跳过一个候选也没有关系
+                        String hash = GraphHash.of(graph);
+                        if (acceptedHashes.contains(hash)) {
+                            duplicates.incrementAndGet();
+                            continue;
+                        }
+                        long solutions = cache != null ? cache.countSolutions(hash, graph, maxSolutions)
+                                : new Solver(graph).countSolutions(maxSolutions);
+                        if (solutions < minSolutions || solutions > maxSolutions) continue;
+                        if (!acceptedHashes.add(hash)) {
+                            duplicates.incrementAndGet();
+                            continue;
+                        }
+                        int index = accepted.incrementAndGet();
+                        if (index > count) break;
+                        write(graph, new File(outputDirectory, index + ".dat"));
+                    }
+                } catch (IOException | RuntimeException e) {
+                    // 记录后让其他线程也停下，由 run 抛出
+                    synchronized (errors) {
+                        errors.add(e);
+                    }
+                    accepted.set(count);
+                }
+            });
+        }
+        executor.shutdown();
+        executor.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+        if (!errors.isEmpty()) {
+            Exception e = errors.get(0);
+            if (e instanceof IOException) throw (IOException) e;
+            throw (RuntimeException) e;
+        }
+        if (cache != null) {
+            cache.save();
+        }
+        accepted.set(Math.min(accepted.get(), count));
+    }
+
+    Graph generate(Random random) {
+        int size = minPoints + random.nextInt(maxPoints - minPoints + 1);
+        Graph graph = new Graph();
+        double[] x = new double[size];
+        double[] y = new double[size];
+        placePoints(random, size, x, y);
+        for (int i = 0; i < size; i++) {
+            Graph.Point point = new Graph.Point();
+            point.index = i;
+            point.x = (int) (x[i] * 0x7fffffff);
+            point.y = (int) (y[i] * 0x7fffffff);
+            graph.pointList.add(point);
+        }
+
+        // 随机路线：每一步在最近的几个未走过且不与已有边交叉的点中选一个
+        int[] route = new int[size];
+        int[] order = new int[size];
+        boolean[] visited = new boolean[size];
+        route[0] = random.nextInt(size);
+        visited[route[0]] = true;
+        for (int i = 1; i < size; i++) {
+            int from = route[i - 1];
+            int[] nearest = nearest(from, x, y, visited, NEIGHBOURS);
+            int next = -1;
+            for (int candidate : nearest) {
+                if (candidate != -1 && !crosses(graph, x, y, from, candidate)) {
+                    next = candidate;
+                    if (random.nextInt(3) != 0) break;
+                }
+            }
+            if (next == -1) {
+                next = nearest[0];
+            }
+            route[i] = next;
+            order[next] = i;
+            visited[next] = true;
+            addEdge(graph, from, next, random.nextDouble() < directedRate ? Graph.Edge.Direct.A2B : Graph.Edge.Direct.None);
+        }
+
+        // 补充近邻边
+        boolean[] none = new boolean[size];
+        for (int a = 0; a < size; a++) {
+            for (int b : nearest(a, x, y, none, NEIGHBOURS)) {
+                if (graph.edgeList.size() == MAX_EDGES) break;
+                if (b == -1 || b < a || random.nextDouble() >= extraRate) continue;
+                if (hasEdge(graph, a, b) || crosses(graph, x, y, a, b)) continue;
+                Graph.Edge.Direct direct = Graph.Edge.Direct.None;
+                if (random.nextDouble() < directedRate) {
+                    // 多数与路线方向一致，避免大量候选直接无解
+                    boolean forward = order[a] < order[b] ^ random.nextInt(4) == 0;
+                    direct = forward ? Graph.Edge.Direct.A2B : Graph.Edge.Direct.B2A;
+                }
+                addEdge(graph, a, b, direct);
+            }
+        }
+
+        if (random.nextDouble() < endpointsRate) {
+            graph.pointList.get(route[0]).isStart = true;
+            if (random.nextBoolean()) {
+                graph.pointList.get(route[size - 1]).isEnd = true;
+            }
+        }
+        for (Graph.Point point : graph.pointList) {
+            if (!point.isStart && !point.isEnd && random.nextDouble() < twiceRate) {
+                point.isTwice = true;
+            }
+            if (random.nextDouble() < energyRate) {
+                int energy = random.nextInt(7) - 3;
+                // 前半段多给正能量，后半段多给负能量
+                point.energy = order[point.index] < size / 2 ? Math.abs(energy) : -Math.abs(energy);
+            }
+        }
+        return graph;
+    }
+
+    // 在抖动的网格中随机选不同的格子，保证点之间有间距
+    private static void placePoints(Random random, int size, double[] x, double[] y) {
+        int columns = (int) Math.ceil(Math.sqrt(size * 1.5));
+        int rows = (size * 3 / 2 + columns - 1) / columns + 1;
+        int[] cells = new int[columns * rows];
+        for (int i = 0; i < cells.length; i++) {
+            cells[i] = i;
+        }
+        for (int i = 0; i < size; i++) {
+            int j = i + random.nextInt(cells.length - i);
+            int cell = cells[j];
+            cells[j] = cells[i];
+            cells[i] = cell;
+            double cx = (cell % columns + 0.5 + (random.nextDouble() - 0.5) * 0.4) / columns;
+            double cy = (cell / columns + 0.5 + (random.nextDouble() - 0.5) * 0.4) / rows;
+            x[i] = MARGIN + cx * (1 - MARGIN * 2);
+            y[i] = MARGIN + cy * (1 - MARGIN * 2);
+        }
+    }
+
+    // 距离 from 最近的 k 个未排除的点，按距离升序，不足时以 -1 补齐
+    private static int[] nearest(int from, double[] x, double[] y, boolean[] excluded, int k) {
+        int[] result = new int[k];
+        double[] distance = new double[k];
+        int found = 0;
+        for (int i = 0; i < x.length; i++) {
+            if (i == from || excluded[i]) continue;
+            double dx = x[i] - x[from], dy = y[i] - y[from];
+            double d = dx * dx + dy * dy;
+            if (found == k && d >= distance[k - 1]) continue;
+            int position = found < k ? found++ : k - 1;
+            while (position > 0 && distance[position - 1] > d) {
+                result[position] = result[position - 1];
+                distance[position] = distance[position - 1];
+                position--;
+            }
+            result[position] = i;
+            distance[position] = d;
+        }
+        for (int i = found; i < k; i++) {
+            result[i] = -1;
+        }
+        return result;
+    }
+
+    private static boolean hasEdge(Graph graph, int a, int b) {
+        for (Graph.Edge edge : graph.edgeList) {
+            if ((edge.pointA == a && edge.pointB == b) || (edge.pointA == b && edge.pointB == a)) return true;
+        }
+        return false;
+    }
+
+    // 新边 (a, b) 是否与已有的边在端点以外相交
+    private static boolean crosses(Graph graph, double[] x, double[] y, int a, int b) {
+        for (Graph.Edge edge : graph.edgeList) {
+            int c = edge.pointA, d = edge.pointB;
+            if (c == a || c == b || d == a || d == b) continue;
+            if (side(x, y, a, b, c) * side(x, y, a, b, d) < 0 && side(x, y, c, d, a) * side(x, y, c, d, b) < 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static double side(double[] x, double[] y, int a, int b, int p) {
+        return Math.signum((x[b] - x[a]) * (y[p] - y[a]) - (y[b] - y[a]) * (x[p] - x[a]));
+    }
+
+    private static void addEdge(Graph graph, int a, int b, Graph.Edge.Direct direct) {
+        Graph.Edge edge = new Graph.Edge();
+        edge.pointA = a;
+        edge.pointB = b;
+        edge.direct = direct;
+        graph.edgeList.add(edge);
+    }
+
+    private static void write(Graph graph, File file) throws IOException {
+        try (OutputStream outputStream = new FileOutputStream(file)) {
+            graph.writeToStream(outputStream, Graph.VERSION_1);
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package org.cszt0.hamiltonian;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * 分析关卡目录下的所有关卡，生成 {@link LevelIndex} 格式的索引。
+ * <p>
+ * 参数：关卡目录（与 packLevels 相同，数字目录为章节、数字文件名为关卡，helloworld.dat 为第 0 章第 0 关）、输出文件
+ */
+public class LevelIndexer {
+
+    // 每个关卡最多搜索的局面数，超过时记 FLAG_TRUNCATED
+    static final long NODE_LIMIT = 200_000_000L;
+
+    public static void main(String[] args) throws Exception {
+        if (args.length != 2) {
+            throw new IllegalArgumentException("参数：关卡目录 输出文件");
+        }
+        List<int[]> keys = new ArrayList<>();
+        List<File> files = new ArrayList<>();
+        File levelDir = new File(args[0]);
+        File[] chapterDirs = levelDir.listFiles();
+        if (chapterDirs == null) {
+            throw new IOException("关卡目录不存在：" + levelDir);
+        }
+        for (File chapterDir : chapterDirs) {
+            if (!chapterDir.isDirectory() || !chapterDir.getName().matches("\\d+")) continue;
+            File[] levels = chapterDir.listFiles();
+            if (levels == null) continue;
+            for (File level : levels) {
+                if (!level.getName().matches("\\d+\\.dat")) continue;
+                keys.add(new int[]{Integer.parseInt(chapterDir.getName()), Integer.parseInt(level.getName().replace(".dat", ""))});
+                files.add(level);
+            }
+        }
+        File helloWorld = new File(levelDir, "helloworld.dat");
+        if (helloWorld.exists()) {
+            keys.add(new int[]{0, 0});
+            files.add(helloWorld);
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        List<Future<byte[]>> results = new ArrayList<>();
+        for (int i = 0; i < files.size(); i++) {
+            int[] key = keys.get(i);
+            File file = files.get(i);
+            results.add(executor.submit(() -> analyze(key[0], key[1], file)));
+        }
+        executor.shutdown();
+
+        // 按 (章节, 关卡) 排序
+        Integer[] order = new Integer[keys.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> {
+            int[] x = keys.get(a), y = keys.get(b);
+            return x[0] != y[0] ? Integer.compare(x[0], y[0]) : Integer.compare(x[1], y[1]);
+        });
+        ByteBuffer header = ByteBuffer.allocate(LevelIndex.HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(LevelIndex.MAGIC).putShort((short) LevelIndex.VERSION).putShort((short) LevelIndex.ENTRY_SIZE).putInt(order.length);
+        File output = new File(args[1]);
+        File parent = output.getParentFile();
+        if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("无法创建目录：" + parent);
+        }
+        try (OutputStream outputStream = new FileOutputStream(output)) {
+            outputStream.write(header.array());
+            for (int i : order) {
+                try {
+                    outputStream.write(results.get(i).get());
+                } catch (ExecutionException e) {
+                    throw new IOException("分析关卡失败：" + files.get(i), e.getCause());
+                }
+            }
+        }
+    }
+
+    static byte[] analyze(int chapter, int checkpoint, File file) throws IOException {
+        Graph graph;
+        try (InputStream inputStream = new FileInputStream(file)) {
+            graph = Graph.readFromStream(inputStream);
+        }
+        Level level = new Level(graph);
+        Search search = new Search(level);
+        search.run();
+
+        int energyPointCount = 0, energyGain = 0, energyCost = 0;
+        for (Graph.Point point : graph.pointList) {
+            if (point.energy != 0) energyPointCount++;
+            if (point.energy > 0) energyGain += point.energy;
+            else energyCost -= point.energy;
+        }
+        ByteBuffer entry = ByteBuffer.allocate(LevelIndex.ENTRY_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        entry.putInt(chapter).putInt(checkpoint);
+        entry.putLong(search.solutions).putLong(search.nodes);
+        entry.putFloat(search.branchingNodes == 0 ? 0 : (float) search.branches / search.branchingNodes);
+        entry.putShort(saturate(graph.pointList.size())).putShort(saturate(graph.edgeList.size()));
+        entry.putShort(saturate(energyPointCount)).putShort(saturate(energyGain)).putShort(saturate(energyCost));
+        entry.putShort((short) (search.nodes >= NODE_LIMIT ? LevelIndex.FLAG_TRUNCATED : 0));
+        return entry.array();
+    }
+
+    private static short saturate(int value) {
+        return (short) Math.min(value, 0xffff);
+    }
+
+    /**
+     * 按 {@link GameState} 的规则搜索全部走法，走不通的局面不再展开，与玩家看到的死路判断一致
+     */
+    static class Search {
+        final GameState state;
+        final int size;
+        long nodes;
+        long solutions;
+        // 至少有一种走法的局面数与这些局面的走法总数
+        long branchingNodes;
+        long branches;
+
+        Search(Level level) {
+            state = new GameState(level);
+            size = level.graph.pointList.size();
+        }
+
+        void run() {
+            for (int i = 0; i < size; i++) {
+                expand(i);
+            }
+        }
+
+        private void search() {
+            if (state.isFinished()) {
+                solutions++;
+                return;
+            }
+            if (state.isStuck() || nodes >= NODE_LIMIT) return;
+            int moves = 0;
+            for (int i = 0; i < size; i++) {
+                if (expand(i)) moves++;
+            }
+            if (moves != 0) {
+                branchingNodes++;
+                branches += moves;
+            }
+        }
+
+        private boolean expand(int index) {
+            if (!state.tryMove(index)) return false;
+            nodes++;
+            search();
+            state.undo();
+            return true;
+        }
+    }
+}
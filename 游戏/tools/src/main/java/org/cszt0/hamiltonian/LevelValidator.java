@@ -0,0 +1,267 @@
+package org.cszt0.hamiltonian;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * 并行检查一批关卡，一次列出所有不符合规则的地方。
+ * <p>
+ * 规则与关卡编辑器的“检查连通”“检查答案”相同：起点、终点各最多一个且不能是同一个点，
+ * 能量和（路过两次的点计两次）不能为负，忽略方向时整张图连通；另外检查边的两端不能是同一个点、
+ * 同一对点之间不能有多条边，以及按边的方向从起点出发能到达所有点。
+ * <p>
+ * 符合规则的关卡中，与前面某个关卡是同一个谜题（{@link GraphHash} 相同）的只作提示，不算不符合规则。
+ * <p>
+ * 参数：关卡目录（递归查找 .dat）或 levels.pack，可以有多个；有关卡不符合规则时以状态 1 退出
+ */
+public class LevelValidator {
+
+    public static void main(String[] args) throws Exception {
+        if (args.length == 0) {
+            throw new IllegalArgumentException("参数：关卡目录或 levels.pack");
+        }
+        long startTime = System.nanoTime();
+        List<String> names = new ArrayList<>();
+        List<Callable<Graph>> loaders = new ArrayList<>();
+        for (String arg : args) {
+            File file = new File(arg);
+            if (file.isDirectory()) {
+                collect(file, file.getName(), names, loaders);
+            } else {
+                LevelPack levelPack;
+                try (FileInputStream inputStream = new FileInputStream(file)) {
+                    FileChannel channel = inputStream.getChannel();
+                    levelPack = LevelPack.map(channel, 0, channel.size());
+                }
+                collect(levelPack, file.getName(), names, loaders);
+            }
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        List<Future<Result>> results = new ArrayList<>();
+        for (Callable<Graph> loader : loaders) {
+            results.add(executor.submit(() -> {
+                Graph graph = loader.call();
+                // 不符合规则的关卡（如编辑中的、不连通的）可能非常对称，不计算哈希
+                List<String> violations = validate(graph);
+                return new Result(violations, violations.isEmpty() ? GraphHash.of(graph) : null);
+            }));
+        }
+        executor.shutdown();
+
+        int invalid = 0;
+        Map<String, String> puzzles = new HashMap<>();
+        for (int i = 0; i < results.size(); i++) {
+            List<String> violations;
+            try {
+                Result result = results.get(i).get();
+                violations = result.violations;
+                String same = result.hash == null ? null : puzzles.putIfAbsent(result.hash, names.get(i));
+                if (same != null) {
+                    System.out.println(names.get(i) + ": 提示：与 " + same
+                            + (GraphHash.isExact(result.hash) ? " 是同一个谜题" : " 可能是同一个谜题"));
+                }
+            } catch (ExecutionException e) {
+                violations = Arrays.asList("无法读取：" + e.getCause().getMessage());
+            }
+            if (violations.isEmpty()) continue;
+            invalid++;
+            for (String violation : violations) {
+                System.out.println(names.get(i) + ": " + violation);
+            }
+        }
+        System.out.printf("检查 %d 个关卡，%d 个不符合规则，用时 %.2f 秒%n",
+                names.size(), invalid, (System.nanoTime() - startTime) / 1e9);
+        if (invalid != 0) {
+            System.exit(1);
+        }
+    }
+
+    private static void collect(File dir, String prefix, List<String> names, List<Callable<Graph>> loaders) {
+        File[] files = dir.listFiles();
+        if (files == null) return;
+        Arrays.sort(files);
+        for (File file : files) {
+            String name = prefix + "/" + file.getName();
+            if (file.isDirectory()) {
+                collect(file, name, names, loaders);
+            } else if (file.getName().endsWith(".dat")) {
+                names.add(name);
+                loaders.add(() -> {
+                    try (InputStream inputStream = new FileInputStream(file)) {
+                        return Graph.readFromStream(inputStream);
+                    }
+                });
+            }
+        }
+    }
+
+    private static void collect(LevelPack levelPack, String prefix, List<String> names, List<Callable<Graph>> loaders) {
+        if (levelPack.getLevel(0, 0) != null) {
+            names.add(prefix + ":helloworld");
+            loaders.add(() -> levelPack.readGraph(0, 0));
+        }
+        for (int chapter : levelPack.getChapters()) {
+            // 目录中同一章的关卡号不一定从 1 开始连续，逐个查找直到找齐
+            int remaining = levelPack.getCheckpointCount(chapter);
+            for (int checkpoint = 0; remaining > 0; checkpoint++) {
+                if (levelPack.getLevel(chapter, checkpoint) == null) continue;
+                remaining--;
+                int c = checkpoint;
+                names.add(prefix + ":" + chapter + "-" + checkpoint);
+                loaders.add(() -> levelPack.readGraph(chapter, c));
+            }
+        }
+    }
+
+    /**
+     * 返回所有不符合规则的地方，符合规则时为空
+     */
+    public static List<String> validate(Graph graph) {
+        List<String> violations = new ArrayList<>();
+        List<Graph.Point> pointList = graph.pointList;
+        int size = pointList.size();
+        if (size == 0) {
+            violations.add("没有点");
+            return violations;
+        }
+
+        int start = -1, end = -1, energy = 0;
+        for (Graph.Point point : pointList) {
+            if (point.isStart && point.isEnd) {
+                violations.add("点 " + point.index + " 不能同时为起点和终点");
+            }
+            if (point.isStart) {
+                if (start != -1) violations.add("存在多个起点：" + start + ", " + point.index);
+                else start = point.index;
+            }
+            if (point.isEnd) {
+                if (end != -1) violations.add("存在多个终点：" + end + ", " + point.index);
+                else end = point.index;
+            }
+            energy += (point.isTwice ? 2 : 1) * point.energy;
+        }
+        if (energy < 0) {
+            violations.add("能量和为负数：" + energy);
+        }
+
+        UnionFind components = new UnionFind(size);
+        long[] pairs = new long[graph.edgeList.size()];
+        int pairCount = 0;
+        for (int i = 0; i < graph.edgeList.size(); i++) {
+            Graph.Edge edge = graph.edgeList.get(i);
+            if (edge.pointA == edge.pointB) {
+                violations.add("边 " + i + " 的两端都是点 " + edge.pointA);
+                continue;
+            }
+            components.union(edge.pointA, edge.pointB);
+            pairs[pairCount++] = (long) Math.min(edge.pointA, edge.pointB) * size + Math.max(edge.pointA, edge.pointB);
+        }
+        Arrays.sort(pairs, 0, pairCount);
+        for (int i = 1; i < pairCount; i++) {
+            if (pairs[i] == pairs[i - 1] && (i == 1 || pairs[i] != pairs[i - 2])) {
+                violations.add("点 " + pairs[i] / size + " 与点 " + pairs[i] % size + " 之间有多条边");
+            }
+        }
+        if (components.count != 1) {
+            violations.add("不是连通图（忽略方向），共 " + components.count + " 个部分");
+        }
+
+        // 只有一个起点时检查按方向的可达性；不连通时已经报告过
+        if (start != -1 && components.count == 1) {
+            boolean[] reached = reachableFrom(new Adjacency(graph), start);
+            List<Integer> unreachable = new ArrayList<>();
+            for (int i = 0; i < size; i++) {
+                if (!reached[i]) unreachable.add(i);
+            }
+            if (!unreachable.isEmpty()) {
+                violations.add("按边的方向从起点 " + start + " 无法到达：" + unreachable);
+            }
+        }
+        return violations;
+    }
+
+    private static boolean[] reachableFrom(Adjacency adjacency, int from) {
+        boolean[] reached = new boolean[adjacency.size];
+        int[] queue = new int[adjacency.size];
+        int head = 0, tail = 0;
+        reached[from] = true;
+        queue[tail++] = from;
+        while (head < tail) {
+            int index = queue[head++];
+            for (int arc = adjacency.start[index]; arc < adjacency.start[index + 1]; arc++) {
+                int next = adjacency.point[arc];
+                if (!reached[next]) {
+                    reached[next] = true;
+                    queue[tail++] = next;
+                }
+            }
+        }
+        return reached;
+    }
+
+    private static class Result {
+        final List<String> violations;
+        final String hash;
+
+        Result(List<String> violations, String hash) {
+            this.violations = violations;
+            this.hash = hash;
+        }
+    }
+
+    /**
+     * 按大小合并、查找时路径减半的并查集
+     */
+    static class UnionFind {
+        private final int[] parent;
+        private final int[] size;
+        // 当前的集合数
+        int count;
+
+        UnionFind(int n) {
+            parent = new int[n];
+            size = new int[n];
+            for (int i = 0; i < n; i++) {
+                parent[i] = i;
+                size[i] = 1;
+            }
+            count = n;
+        }
+
+        int find(int x) {
+            while (parent[x] != x) {
+                parent[x] = parent[parent[x]];
+                x = parent[x];
+            }
+            return x;
+        }
+
+        void union(int a, int b) {
+            a = find(a);
+            b = find(b);
+            if (a == b) return;
+            if (size[a] < size[b]) {
+                int t = a;
+                a = b;
+                b = t;
+            }
+            parent[b] = a;
+            size[a] += size[b];
+            count--;
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package org.cszt0.hamiltonian;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 以 {@link GraphHash} 为键保存解的个数，同一个谜题（包括重新编号、移动了点的副本）只求解一次。
+ * 不是规范哈希（{@link GraphHash#isExact}）的关卡每次都求解，不保存。可在多个线程中同时使用。
+ * <p>
+ * 文件为小端序：魔数 'H' 'M' 'L' 'C'、版本 u16、保留 u16、条数 i32；
+ * 每条为哈希 16 字节、解的个数 i64、标志 i32（bit0 为精确值，否则只知道解的个数不少于该值）
+ */
+public class SolverCache {
+
+    private static final int MAGIC = 0x434c4d48;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 12;
+    private static final int ENTRY_SIZE = 28;
+    private static final int FLAG_EXACT = 1;
+
+    private final File file;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    private SolverCache(File file) {
+        this.file = file;
+    }
+
+    /**
+     * 读取缓存文件，文件不存在时为空
+     */
+    public static SolverCache open(File file) throws IOException {
+        SolverCache cache = new SolverCache(file);
+        if (!file.exists()) return cache;
+        byte[] bytes = new byte[(int) file.length()];
+        try (InputStream inputStream = new FileInputStream(file)) {
+            int length = 0, read;
+            while (length < bytes.length && (read = inputStream.read(bytes, length, bytes.length - length)) != -1) {
+                length += read;
+            }
+        }
+        ByteBuffer data = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+        if (bytes.length < HEADER_SIZE || data.getInt(0) != MAGIC || (data.getShort(4) & 0xffff) != VERSION) {
+            throw new IOException("不是求解缓存：" + file);
+        }
+        int count = data.getInt(8);
+        if (count < 0 || HEADER_SIZE + (long) count * ENTRY_SIZE > bytes.length) {
+            throw new IOException("求解缓存不完整：" + file);
+        }
+        data.position(HEADER_SIZE);
+        StringBuilder key = new StringBuilder(32);
+        for (int i = 0; i < count; i++) {
+            key.setLength(0);
+            for (int j = 0; j < 16; j++) {
+                byte b = data.get();
+                key.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+            }
+            long solutions = data.getLong();
+            int flags = data.getInt();
+            cache.entries.put(key.toString(), new Entry(solutions, (flags & FLAG_EXACT) != 0));
+        }
+        return cache;
+    }
+
+    /**
+     * 与 {@link Solver#countSolutions(long)} 相同：返回值大于 limit 时只说明解的个数超过 limit。
+     * 缓存中的结果足以回答时不再求解
+     */
+    public long countSolutions(Graph graph, long limit) {
+        return countSolutions(GraphHash.of(graph), graph, limit);
+    }
+
+    /**
+     * hash 为调用方已经算出的 {@link GraphHash#of}
+     */
+    public long countSolutions(String hash, Graph graph, long limit) {
+        if (!GraphHash.isExact(hash)) {
+            return new Solver(graph).countSolutions(limit);
+        }
+        Entry entry = entries.get(hash);
+        if (entry != null && (entry.exact || entry.solutions > limit)) {
+            return entry.solutions;
+        }
+        long solutions = new Solver(graph).countSolutions(limit);
+        entries.merge(hash, new Entry(solutions, solutions <= limit), SolverCache::better);
+        return solutions;
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * 先写入临时文件再替换，写入中断时原文件不受影响
+     */
+    public void save() throws IOException {
+        Map.Entry<?, ?>[] snapshot = entries.entrySet().toArray(new Map.Entry<?, ?>[0]);
+        ByteBuffer data = ByteBuffer.allocate(HEADER_SIZE + snapshot.length * ENTRY_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        data.putInt(MAGIC).putShort((short) VERSION).putShort((short) 0).putInt(snapshot.length);
+        for (Map.Entry<?, ?> item : snapshot) {
+            String key = (String) item.getKey();
+            Entry entry = (Entry) item.getValue();
+            for (int j = 0; j < 32; j += 2) {
+                data.put((byte) Integer.parseInt(key.substring(j, j + 2), 16));
+            }
+            data.putLong(entry.solutions).putInt(entry.exact ? FLAG_EXACT : 0);
+        }
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("无法创建目录：" + parent);
+        }
+        File temp = new File(file.getPath() + ".tmp");
+        try (OutputStream outputStream = new FileOutputStream(temp)) {
+            outputStream.write(data.array());
+        }
+        if (!temp.renameTo(file) && !(file.delete() && temp.renameTo(file))) {
+            throw new IOException("无法写入求解缓存：" + file);
+        }
+    }
+
+    // 精确值优先，否则保留更大的下限
+    private static Entry better(Entry a, Entry b) {
+        if (a.exact) return a;
+        if (b.exact) return b;
+        return a.solutions >= b.solutions ? a : b;
+    }
+
+    private static class Entry {
+        final long solutions;
+        final boolean exact;
+
+        Entry(long solutions, boolean exact) {
+            this.solutions = solutions;
+            this.exact = exact;
+        }
+    }
+}
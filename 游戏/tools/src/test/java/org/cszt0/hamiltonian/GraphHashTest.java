@@ -0,0 +1,147 @@
+package org.cszt0.hamiltonian;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * 规范哈希与点的编号、坐标、边的顺序和边的书写方向无关，并能区分不同的谜题
+ */
+public class GraphHashTest {
+
+    @Test
+    public void shippedLevels_invariant() throws IOException {
+        Random random = new Random(1);
+        for (File file : TestGraphs.levelFiles()) {
+            Graph graph = TestGraphs.read(file);
+            String hash = GraphHash.of(graph);
+            assertTrue(file.getPath(), GraphHash.isExact(hash));
+            assertEquals(32, hash.length());
+            for (int i = 0; i < 10; i++) {
+                assertEquals(file.getPath(), hash, GraphHash.of(relabel(graph, random)));
+            }
+        }
+    }
+
+    @Test
+    public void distinguishesPuzzleChanges() {
+        Graph graph = TestGraphs.path(5);
+        String hash = GraphHash.of(graph);
+
+        Graph start = TestGraphs.path(5);
+        start.pointList.get(0).isStart = true;
+        Graph otherStart = TestGraphs.path(5);
+        otherStart.pointList.get(1).isStart = true;
+        Graph twice = TestGraphs.path(5);
+        twice.pointList.get(2).isTwice = true;
+        Graph energy = TestGraphs.path(5);
+        energy.pointList.get(2).energy = 1;
+        Graph directed = TestGraphs.path(5);
+        directed.edgeList.get(1).direct = Graph.Edge.Direct.A2B;
+        Graph extraEdge = TestGraphs.path(5);
+        extraEdge.edgeList.add(TestGraphs.edge(0, 2, Graph.Edge.Direct.None));
+
+        List<String> hashes = new ArrayList<>();
+        for (Graph other : Arrays.asList(graph, start, otherStart, twice, energy, directed, extraEdge)) {
+            hashes.add(GraphHash.of(other));
+        }
+        assertEquals(hash, hashes.get(0));
+        assertEquals("不同的谜题得到了相同的哈希：" + hashes, hashes.size(), hashes.stream().distinct().count());
+
+        // 路线两端对称，起点在哪一端都是同一个谜题
+        Graph mirrored = TestGraphs.path(5);
+        mirrored.pointList.get(4).isStart = true;
+        assertEquals(hashes.get(1), GraphHash.of(mirrored));
+    }
+
+    // 对称性很高的图也应在毫秒级完成，超时上限留足余量
+    @Test(timeout = 60_000)
+    public void symmetricGraphs_fastAndInvariant() {
+        Random random = new Random(2);
+        List<Graph> graphs = new ArrayList<>();
+        graphs.add(TestGraphs.points(200));
+        Graph star = TestGraphs.points(37);
+        for (int i = 1; i < 37; i++) {
+            star.edgeList.add(TestGraphs.edge(0, i, Graph.Edge.Direct.None));
+        }
+        graphs.add(star);
+        Graph complete = TestGraphs.points(12);
+        for (int i = 0; i < 12; i++) {
+            for (int j = i + 1; j < 12; j++) {
+                complete.edgeList.add(TestGraphs.edge(i, j, Graph.Edge.Direct.None));
+            }
+        }
+        graphs.add(complete);
+        Graph cycle = TestGraphs.points(36);
+        for (int i = 0; i < 36; i++) {
+            cycle.edgeList.add(TestGraphs.edge(i, (i + 1) % 36, Graph.Edge.Direct.A2B));
+        }
+        graphs.add(cycle);
+        for (Graph graph : graphs) {
+            String hash = GraphHash.of(graph);
+            assertTrue(GraphHash.isExact(hash));
+            assertEquals(hash, GraphHash.of(relabel(graph, random)));
+        }
+    }
+
+    @Test
+    public void searchLimit_approximateButInvariant() {
+        // 12 个互不相连的五边形：对称性太高，超过搜索上限
+        Graph graph = TestGraphs.points(60);
+        for (int c = 0; c < 12; c++) {
+            for (int i = 0; i < 5; i++) {
+                graph.edgeList.add(TestGraphs.edge(c * 5 + i, c * 5 + (i + 1) % 5, Graph.Edge.Direct.None));
+            }
+        }
+        String hash = GraphHash.of(graph);
+        assertFalse(GraphHash.isExact(hash));
+        assertTrue(hash.startsWith(GraphHash.APPROXIMATE_PREFIX));
+        Random random = new Random(3);
+        for (int i = 0; i < 5; i++) {
+            assertEquals(hash, GraphHash.of(relabel(graph, random)));
+        }
+    }
+
+    /**
+     * 随机重新编号、改变坐标、打乱边的顺序并随机交换边的两端（同时反转方向）
+     */
+    static Graph relabel(Graph graph, Random random) {
+        int size = graph.pointList.size();
+        List<Integer> permutation = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            permutation.add(i);
+        }
+        Collections.shuffle(permutation, random);
+        Graph result = TestGraphs.points(size);
+        for (Graph.Point point : graph.pointList) {
+            Graph.Point copy = result.pointList.get(permutation.get(point.index));
+            copy.x = random.nextInt();
+            copy.y = random.nextInt();
+            copy.isStart = point.isStart;
+            copy.isEnd = point.isEnd;
+            copy.isTwice = point.isTwice;
+            copy.energy = point.energy;
+        }
+        List<Graph.Edge> edges = new ArrayList<>(graph.edgeList);
+        Collections.shuffle(edges, random);
+        for (Graph.Edge edge : edges) {
+            int a = permutation.get(edge.pointA), b = permutation.get(edge.pointB);
+            if (random.nextBoolean()) {
+                result.edgeList.add(TestGraphs.edge(a, b, edge.direct));
+            } else {
+                Graph.Edge.Direct direct = edge.direct == Graph.Edge.Direct.A2B ? Graph.Edge.Direct.B2A
+                        : edge.direct == Graph.Edge.Direct.B2A ? Graph.Edge.Direct.A2B : Graph.Edge.Direct.None;
+                result.edgeList.add(TestGraphs.edge(b, a, direct));
+            }
+        }
+        return result;
+    }
+}
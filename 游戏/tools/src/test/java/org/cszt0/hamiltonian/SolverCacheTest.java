@@ -0,0 +1,135 @@
+package org.cszt0.hamiltonian;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * 求解缓存的保存与读取
+ */
+public class SolverCacheTest {
+
+    @Test
+    public void saveAndOpen() throws IOException {
+        File dir = Files.createTempDirectory("solver-cache").toFile();
+        File file = new File(dir, "sub/solver.cache");
+        try {
+            SolverCache cache = SolverCache.open(file);
+            assertEquals(0, cache.size());
+            Random random = new Random(4);
+            long total = 0;
+            for (File level : TestGraphs.levelFiles()) {
+                Graph graph = TestGraphs.read(level);
+                long solutions = new Solver(graph).countSolutions();
+                assertEquals(level.getPath(), solutions, cache.countSolutions(graph, Long.MAX_VALUE));
+                // 重新编号的副本命中同一条
+                assertEquals(level.getPath(), solutions, cache.countSolutions(GraphHashTest.relabel(graph, random), Long.MAX_VALUE));
+                total++;
+            }
+            int size = cache.size();
+            assertEquals(total, size);
+            cache.save();
+            assertFalse(new File(file.getPath() + ".tmp").exists());
+
+            SolverCache reopened = SolverCache.open(file);
+            assertEquals(size, reopened.size());
+            for (File level : TestGraphs.levelFiles()) {
+                Graph graph = TestGraphs.read(level);
+                assertEquals(level.getPath(), new Solver(graph).countSolutions(), reopened.countSolutions(graph, Long.MAX_VALUE));
+            }
+            assertEquals(size, reopened.size());
+        } finally {
+            delete(dir);
+        }
+    }
+
+    @Test
+    public void lowerBound() throws IOException {
+        File dir = Files.createTempDirectory("solver-cache").toFile();
+        File file = new File(dir, "solver.cache");
+        try {
+            // 4 个点的完全图，无起点终点时有 24 个解
+            Graph graph = TestGraphs.points(4);
+            for (int i = 0; i < 4; i++) {
+                for (int j = i + 1; j < 4; j++) {
+                    graph.edgeList.add(TestGraphs.edge(i, j, Graph.Edge.Direct.None));
+                }
+            }
+            SolverCache cache = SolverCache.open(file);
+            long bounded = cache.countSolutions(graph, 5);
+            assertTrue(bounded > 5);
+            cache.save();
+
+            SolverCache reopened = SolverCache.open(file);
+            // 下限足以回答更小的上限，更大的上限需要重新求解并更新为精确值
+            assertEquals(bounded, reopened.countSolutions(graph, 3));
+            assertEquals(24, reopened.countSolutions(graph, 100));
+            assertEquals(24, reopened.countSolutions(graph, 3));
+        } finally {
+            delete(dir);
+        }
+    }
+
+    @Test
+    public void approximateHashNotCached() throws IOException {
+        Graph graph = TestGraphs.points(3);
+        String hash = GraphHash.APPROXIMATE_PREFIX + "0123456789abcdef0123456789abcdef";
+        SolverCache cache = SolverCache.open(new File("does-not-exist.cache"));
+        assertEquals(0, cache.countSolutions(hash, graph, 10));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void truncatedAndUnknownVersion() throws IOException {
+        File dir = Files.createTempDirectory("solver-cache").toFile();
+        File file = new File(dir, "solver.cache");
+        try {
+            SolverCache cache = SolverCache.open(file);
+            cache.countSolutions(TestGraphs.path(4), Long.MAX_VALUE);
+            cache.save();
+            byte[] bytes = Files.readAllBytes(file.toPath());
+            for (int length = 0; length < bytes.length; length++) {
+                write(file, bytes, length);
+                try {
+                    SolverCache.open(file);
+                    fail("截断到 " + length + " 字节时应当失败");
+                } catch (IOException expected) {
+                    // 不是求解缓存或不完整
+                }
+            }
+            bytes[4] = 2;
+            write(file, bytes, bytes.length);
+            try {
+                SolverCache.open(file);
+                fail("未知版本时应当失败");
+            } catch (IOException expected) {
+                // 不是求解缓存
+            }
+        } finally {
+            delete(dir);
+        }
+    }
+
+    private static void write(File file, byte[] bytes, int length) throws IOException {
+        try (OutputStream outputStream = new FileOutputStream(file)) {
+            outputStream.write(bytes, 0, length);
+        }
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}